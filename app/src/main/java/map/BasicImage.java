@@ -1,6 +1,12 @@
 package map;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.util.LinkedList;
@@ -26,18 +32,68 @@ import java.awt.geom.AffineTransform;
 public class BasicImage {
     public/***/ BufferedImage img;
 
+    /**
+     * Pixel-data of img, read directly by getARGB() etc: ints if
+     * img is INT_ARGB, bytes (a,b,g,r) if 4BYTE_ABGR. Otherwise both
+     * NULL, and pixels are read through img.getRGB().
+     * Pixel x,y starts at index: dataOffset + y*scanlineStride +
+     * x*pixelStride. */
+    public/***/ int[] intData;
+    public/***/ byte[] byteData;
+    public/***/ int dataOffset, scanlineStride, pixelStride;
+
     public BasicImage(BufferedImage img) {
         this.img = img;
+        initData();
     }
 
     /**
      * Constructor for empty image. (r,g,b,a)=(0,0,0,0) for every pixel.
      */
     public BasicImage(int width, int height) {
-        this.img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    /**
+     * Sets up direct access to pixel-data, if img has a known
+     * layout.
+     */
+    public/***/ void initData() {
+        WritableRaster r = img.getRaster();
+        DataBuffer db = r.getDataBuffer();
+        int tx = r.getSampleModelTranslateX();
+        int ty = r.getSampleModelTranslateY();
+
+        if (img.getType() == BufferedImage.TYPE_INT_ARGB &&
+            r.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) r.getSampleModel();
+            this.intData = ((DataBufferInt) db).getData();
+            this.pixelStride = 1;
+            this.scanlineStride = sm.getScanlineStride();
+        }
+        else if (img.getType() == BufferedImage.TYPE_4BYTE_ABGR &&
+                 r.getSampleModel() instanceof PixelInterleavedSampleModel &&
+                 Arrays.equals(((PixelInterleavedSampleModel) r.getSampleModel()).getBandOffsets(), new int[]{3, 2, 1, 0})) {
+            PixelInterleavedSampleModel sm = (PixelInterleavedSampleModel) r.getSampleModel();
+            this.byteData = ((DataBufferByte) db).getData();
+            this.pixelStride = sm.getPixelStride();
+            this.scanlineStride = sm.getScanlineStride();
+        }
+        else return;
+
+        this.dataOffset = db.getOffset() - ty*this.scanlineStride - tx*this.pixelStride;
     }
 
 
+    /**
+     * @return Size of pixel-data in memory, in bytes.
+     */
+    public long getNoBytes() {
+        DataBuffer db = img.getRaster().getDataBuffer();
+        int bits = DataBuffer.getDataTypeSize(db.getDataType());
+        return (long) db.getSize() * db.getNumBanks() * bits / 8;
+    }
+
     /**
      * @return Img width, i.e no of pixels on width.
      */
@@ -57,12 +113,86 @@ public class BasicImage {
      */
     public Color getColor(int x, int y) {
         boolean hasAlpha = true;
-        return new Color(img.getRGB(x, y), hasAlpha);
+        return new Color(getARGB(x, y), hasAlpha);
     }
     public Color getColor(int[] p) {
         return getColor(p[0], p[1]);
     }
 
+    /**
+     * @return Color of pixel as non-premultiplied argb-int (like
+     * BufferedImage.getRGB()), without allocation.
+     */
+    public int getARGB(int x, int y) {
+        if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+            throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+        int i = this.dataOffset + y*this.scanlineStride + x*this.pixelStride;
+        if (this.intData != null) return this.intData[i];
+        if (this.byteData != null) {
+            return
+                (this.byteData[i] & 0xff) << 24 |
+                (this.byteData[i+3] & 0xff) << 16 |
+                (this.byteData[i+2] & 0xff) << 8 |
+                (this.byteData[i+1] & 0xff);
+        }
+        return img.getRGB(x, y);
+    }
+
+    /**
+     * @return Alpha-value (0-255) of pixel, without allocation.
+     */
+    public int getAlpha(int x, int y) {
+        if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+            throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+        int i = this.dataOffset + y*this.scanlineStride + x*this.pixelStride;
+        if (this.intData != null) return this.intData[i] >>> 24;
+        if (this.byteData != null) return this.byteData[i] & 0xff;
+        return img.getRGB(x, y) >>> 24;
+    }
+
+    /**
+     * Reads alpha-values (0-255) of a whole pixel-row.
+     *
+     * @param y Row.
+     * @param dst Destination, at least width long.
+     * @return dst
+     */
+    public int[] getAlphaRow(int y, int[] dst) {
+        return getAlphaRow(y, dst, 0);
+    }
+
+    /**
+     * @param off Index in dst of first pixel in row.
+     */
+    public int[] getAlphaRow(int y, int[] dst, int off) {
+        return getAlphaRow(y, 0, getWidth(), dst, off);
+    }
+
+    /**
+     * Reads alpha-values (0-255) of part of a pixel-row.
+     *
+     * @param y Row.
+     * @param x0 First column.
+     * @param w Number of pixels.
+     * @param dst Destination.
+     * @param off Index in dst of pixel x0.
+     * @return dst
+     */
+    public int[] getAlphaRow(int y, int x0, int w, int[] dst, int off) {
+        int i = this.dataOffset + y*this.scanlineStride + x0*this.pixelStride;
+
+        if (this.intData != null) {
+            for (int x = 0; x < w; x++) dst[off+x] = this.intData[i+x] >>> 24;
+        }
+        else if (this.byteData != null) {
+            for (int x = 0; x < w; x++, i += this.pixelStride) dst[off+x] = this.byteData[i] & 0xff;
+        }
+        else {
+            for (int x = 0; x < w; x++) dst[off+x] = img.getRGB(x0+x, y) >>> 24;
+        }
+        return dst;
+    }
+
     /**
      * Set color of pixel.
      */
@@ -314,22 +444,53 @@ public class BasicImage {
         for (int c = 0; c < cols; c++) width += imgs[0][c].getWidth();
         for (int r = 0; r < rows; r++) height += imgs[r][0].getHeight();
 
-        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-        for (int y = 0; y < img.getHeight(); y++) {
-            for (int x = 0; x < img.getWidth(); x++) {
-                int r = y / partHeight;
-                int c = x / partWidth;
-                BufferedImage part = imgs[r][c].img;
-                int partX = x % partWidth;
-                int partY = y % partHeight;
-                boolean hasAlpha = true;
-                Color clr = new Color(part.getRGB(partX, partY), hasAlpha);
-                img.setRGB(x, y, clr.getRGB());
+        BasicImage img = new BasicImage(width, height);
+
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                BasicImage part = imgs[r][c];
+                img.copyPixels(part, 0, 0, part.getWidth(), part.getHeight(),
+                               c * partWidth, r * partHeight);
             }
         }
 
-        return new BasicImage(img);
+        return img;
+    }
+
+    /**
+     * Copies a rectangle of pixels from src into this image, row by
+     * row, straight between the data buffers when possible.
+     *
+     * @param src Source image.
+     * @param sx Left of rectangle in src.
+     * @param sy Top of rectangle in src.
+     * @param w Width of rectangle.
+     * @param h Height of rectangle.
+     * @param dx Left of rectangle in this image.
+     * @param dy Top of rectangle in this image.
+     * @pre This image is INT_ARGB (e.g. constructed with dims).
+     * @pre Rectangle inside both images.
+     */
+    public/***/ void copyPixels(BasicImage src, int sx, int sy, int w, int h, int dx, int dy) {
+        if (this.intData == null)
+            throw new RuntimeException("Destination not INT_ARGB");
+
+        for (int y = 0; y < h; y++) {
+            int di = this.dataOffset + (dy + y)*this.scanlineStride + dx;
+
+            if (src.intData != null) {
+                int si = src.dataOffset + (sy + y)*src.scanlineStride + sx;
+                System.arraycopy(src.intData, si, this.intData, di, w);
+            }
+            else if (src.byteData != null) {
+                for (int x = 0; x < w; x++) {
+                    this.intData[di + x] = src.getARGB(sx + x, sy + y);
+                }
+            }
+            else {
+                src.img.getRGB(sx, sy + y, w, 1, this.intData, di, this.scanlineStride);
+            }
+        }
     }
     public static BasicImage concatenateImages(LinkedList<LinkedList<BasicImage>> imgs) {
         return concatenateImages(to2DArray(imgs));
@@ -471,10 +632,10 @@ public class BasicImage {
 
         for (int[] p : ps) {
             if (isInside(p)) {
-                Color c = getColor(p);
-                r += c.getRed();
-                g += c.getGreen();
-                b += c.getBlue();
+                int argb = getARGB(p[0], p[1]);
+                r += (argb >> 16) & 0xff;
+                g += (argb >> 8) & 0xff;
+                b += argb & 0xff;
                 count++;
             }
         }
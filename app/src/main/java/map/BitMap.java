@@ -0,0 +1,233 @@
+package map;
+
+import java.io.IOException;
+
+/**
+ * A 2d-map of bits, packed row by row in 64-bit words (one bit per
+ * point, each row starting at a new word).
+ *
+ * Snapshots are copy-on-write: a snapshot shares words with the
+ * original until either of them is changed.
+ */
+public class BitMap {
+
+    /**
+     * Dims of map, and words per row. */
+    public/***/ final int width, height, rowWords;
+
+    /**
+     * Bit x%64 of words[y*rowWords + x/64] is point [x,y]. */
+    public/***/ long[] words;
+
+    /**
+     * True if words may be shared with a snapshot (so copy before
+     * changing). */
+    public/***/ boolean shared = false;
+
+    /**
+     * Constructs an empty map.
+     */
+    public BitMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rowWords = (width + 63) >>> 6;
+        this.words = new long[this.rowWords * height];
+    }
+
+    /**
+     * Constructs a map where points with alpha >= alphaThreshold
+     * in an image are set.
+     */
+    public BitMap(BasicImage img, int alphaThreshold) {
+        this(img.getWidth(), img.getHeight());
+
+        int[] alphas = new int[this.width];
+        for (int y = 0; y < this.height; y++) {
+            setRow(y, img.getAlphaRow(y, alphas), alphaThreshold);
+        }
+    }
+
+    /**
+     * Constructs a map of a window of an image, where points with
+     * alpha >= alphaThreshold are set. Only the window is read.
+     *
+     * @param bs Window [xmin ymin xmax ymax], inside img.
+     */
+    public BitMap(TiledImage img, int[] bs, int alphaThreshold) throws IOException {
+        this(bs[2] - bs[0] + 1, bs[3] - bs[1] + 1);
+
+        int[] alphas = new int[this.width];
+        for (int y = 0; y < this.height; y++) {
+            img.getAlphaRow(bs[1] + y, bs[0], this.width, alphas);
+            setRow(y, alphas, alphaThreshold);
+        }
+    }
+
+    /**
+     * Sets points in row y where alphas[x] >= threshold.
+     */
+    public/***/ void setRow(int y, int[] alphas, int threshold) {
+        int base = y * this.rowWords;
+        for (int x = 0; x < this.width; x++) {
+            if (alphas[x] >= threshold) this.words[base + (x >>> 6)] |= 1L << x;
+        }
+    }
+
+    /**
+     * @return A copy of this map. Words are copied first when one of
+     * the maps is changed.
+     */
+    public BitMap snapshot() {
+        BitMap s = new BitMap(this.width, this.height);
+        s.words = this.words;
+        s.shared = true;
+        this.shared = true;
+        return s;
+    }
+
+    /**
+     * @return Width of map.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return Height of map.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return True if [x,y] is set. False if outside map.
+     */
+    public boolean get(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) return false;
+        return (this.words[y*this.rowWords + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Sets point [x,y].
+     * @pre Inside map.
+     */
+    public void set(int x, int y) {
+        unshare();
+        this.words[y*this.rowWords + (x >>> 6)] |= 1L << x;
+    }
+
+    /**
+     * Clears point [x,y].
+     * @pre Inside map.
+     */
+    public void clear(int x, int y) {
+        unshare();
+        this.words[y*this.rowWords + (x >>> 6)] &= ~(1L << x);
+    }
+
+    /**
+     * Sets points [x+dx, y+dy] where [x,y] set in src.
+     * @pre src, moved, inside this map.
+     */
+    public void setAll(BitMap src, int dx, int dy) {
+        unshare();
+        for (int y = 0; y < src.height; y++) {
+            for (int x = src.nextSetBit(0, y); x >= 0; x = src.nextSetBit(x+1, y)) {
+                set(x + dx, y + dy);
+            }
+        }
+    }
+
+    /**
+     * Clears points [x,y] where [x+dx, y+dy] set in src.
+     */
+    public void clearAll(BitMap src, int dx, int dy) {
+        for (int y = 0; y < this.height; y++) {
+            for (int x = nextSetBit(0, y); x >= 0; x = nextSetBit(x+1, y)) {
+                if (src.get(x + dx, y + dy)) clear(x, y);
+            }
+        }
+    }
+
+    /**
+     * Copies the words if shared with a snapshot.
+     */
+    public/***/ void unshare() {
+        if (this.shared) {
+            this.words = this.words.clone();
+            this.shared = false;
+        }
+    }
+
+    /**
+     * @return First set point at or after [x,y], row by row, as
+     * [x,y], or NULL if none. Empty words are skipped whole.
+     */
+    public int[] nextSetPoint(int x, int y) {
+        if (y < 0) { x = 0; y = 0; }
+        if (x < 0) x = 0;
+
+        for (; y < this.height; y++, x = 0) {
+            int base = y * this.rowWords;
+
+            for (int w = x >>> 6; w < this.rowWords; w++) {
+                long word = this.words[base + w];
+                if (w == x >>> 6) word &= -1L << x;
+                if (word == 0) continue;
+
+                int px = (w << 6) + Long.numberOfTrailingZeros(word);
+                if (px < this.width) return new int[]{px, y};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return First set x in row y at or after x, or -1 if none.
+     */
+    public int nextSetBit(int x, int y) {
+        if (x >= this.width) return -1;
+        int base = y * this.rowWords;
+
+        for (int w = x >>> 6; w < this.rowWords; w++) {
+            long word = this.words[base + w];
+            if (w == x >>> 6) word &= -1L << x;
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return -1;
+    }
+
+    /**
+     * @return First clear x in row y at or after x, or width if none.
+     */
+    public int nextClearBit(int x, int y) {
+        if (x >= this.width) return this.width;
+        int base = y * this.rowWords;
+
+        for (int w = x >>> 6; w < this.rowWords; w++) {
+            long word = ~this.words[base + w];
+            if (w == x >>> 6) word &= -1L << x;
+            if (word != 0) return Math.min((w << 6) + Long.numberOfTrailingZeros(word), this.width);
+        }
+        return this.width;
+    }
+
+    /**
+     * @return True if no point set.
+     */
+    public boolean isEmpty() {
+        for (long w : this.words) {
+            if (w != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of set points.
+     */
+    public int cardinality() {
+        int n = 0;
+        for (long w : this.words) n += Long.bitCount(w);
+        return n;
+    }
+}
@@ -44,6 +44,13 @@ public class Box {
      * (at any rotation).
      */
     public Box(LinkedList<int[]> ps) {
+        this(new PointSet(ps));
+    }
+
+    /**
+     * Same as Box(LinkedList), without boxing every point.
+     */
+    public Box(PointSet ps) {
         if (ps.size() < MIN_NO_POINTS_FOR_BOX_FITTING)
             throw new IllegalArgumentException("Too few points");
 
@@ -235,8 +242,8 @@ public class Box {
 
     /**
      * Fits a rotated rectangle to points. Rectangle dimensions are
-     * minimized to fit all points. Best rotation is found
-     * ("sufficient" precision).
+     * minimized to fit all points. The rotation giving the smallest
+     * area is found exactly, see minAreaRectangle().
      *
      * @param ps Points that will all fit inside rectangle.
      * @return [c0,c1,c2,c3] of fit rectangle in consecutive order
@@ -263,44 +270,171 @@ public class Box {
     //     return cs;
     // }
     public/***/ static double[][] fitRectangle(LinkedList<int[]> ps) {
-        ps = getOuterPoints(ps);
+        return fitRectangle(new PointSet(ps));
+    }
+    public/***/ static double[][] fitRectangle(PointSet ps) {
+        int[][] hull = convexHull(ps);
+        return minAreaRectangle(hull[0], hull[1]);
+    }
+
+    /**
+     * The hull of pixel-points is the hull of the left- and rightmost
+     * point of every row, so only those are collected. Rows come in
+     * y-order, so no sorting is needed.
+     *
+     * @param ps Points.
+     * @return [xs, ys] of convex hull of ps, counter-clockwise (with
+     * y up) and without collinear points.
+     */
+    public/***/ static int[][] convexHull(LinkedList<int[]> ps) {
+        return convexHull(new PointSet(ps));
+    }
+    public/***/ static int[][] convexHull(PointSet ps) {
+        int[] bs = ps.getBounds();
+        int ymin = bs[1];
+        int rows = bs[3] - ymin + 1;
+        int[] minX = new int[rows];
+        int[] maxX = new int[rows];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(maxX, Integer.MIN_VALUE);
+        for (int i = 0; i < ps.size(); i++) {
+            int x = ps.getX(i);
+            int r = ps.getY(i) - ymin;
+            if (x < minX[r]) minX[r] = x;
+            if (x > maxX[r]) maxX[r] = x;
+        }
+
+        int[] xs = new int[rows * 2];
+        int[] ys = new int[rows * 2];
+        int n = 0;
+        for (int r = 0; r < rows; r++) {
+            if (minX[r] > maxX[r]) continue;
+            xs[n] = minX[r];
+            ys[n++] = ymin + r;
+            if (maxX[r] != minX[r]) {
+                xs[n] = maxX[r];
+                ys[n++] = ymin + r;
+            }
+        }
+        return convexHull(xs, ys, n);
+    }
+
+    /**
+     * Monotone chain.
+     *
+     * @param xs,ys First n points, sorted on y, then x.
+     * @return [xs, ys] of convex hull, counter-clockwise (with y up)
+     * and without collinear points.
+     */
+    public/***/ static int[][] convexHull(int[] xs, int[] ys, int n) {
+        int[] hx = new int[n + 1];
+        int[] hy = new int[n + 1];
+        int h = 0;
+
+        for (int i = 0; i < n; i++) {
+            while (h >= 2 && cross(hx, hy, h-2, h-1, xs[i], ys[i]) <= 0) h--;
+            hx[h] = xs[i];
+            hy[h++] = ys[i];
+        }
+        int lower = h + 1;
+        for (int i = n-2; i >= 0; i--) {
+            while (h >= lower && cross(hx, hy, h-2, h-1, xs[i], ys[i]) <= 0) h--;
+            hx[h] = xs[i];
+            hy[h++] = ys[i];
+        }
+        if (n > 1) h--; //last is first
+
+        int[] rx = Arrays.copyOf(hx, h);
+        int[] ry = Arrays.copyOf(hy, h);
+        return new int[][]{ rx, ry };
+    }
+
+    /**
+     * @return Cross-product of (h[i]->h[j]) and (h[j]->[x,y]), positive
+     * if left turn (with y up).
+     */
+    public/***/ static long cross(int[] hx, int[] hy, int i, int j, int x, int y) {
+        return (long) (hx[j] - hx[i]) * (y - hy[j]) - (long) (hy[j] - hy[i]) * (x - hx[j]);
+    }
+
+    /**
+     * Rotating calipers: the minimum-area rectangle has a side on an
+     * edge of the hull. For every edge, the points furthest along,
+     * against and out from the edge are advanced (never backwards),
+     * so all edges are tried in linear time.
+     *
+     * @param hx,hy Convex hull, counter-clockwise (with y up).
+     * @return [c0,c1,c2,c3] of minimum-area rectangle containing
+     * hull, in consecutive order (CLOCKWISE, with y down).
+     */
+    public/***/ static double[][] minAreaRectangle(int[] hx, int[] hy) {
+        int h = hx.length;
+        if (h < 3) {
+            // points on a line, no area
+            double[] p = new double[]{ hx[0], hy[0] };
+            double[] q = new double[]{ hx[h-1], hy[h-1] };
+            return new double[][]{ p, q, q.clone(), p.clone() };
+        }
 
         double minArea = Double.MAX_VALUE;
         double[][] bestCs = null;
-
-        for (double r = 0; r < 90; r+=5) {
-            double[][] cs = fitFromRotation(r, ps);
-            double area = Math2.area(cs);
+        int far = 1, right = 1, left = -1;
+
+        for (int i = 0; i < h; i++) {
+            int j = (i+1) % h;
+            double ex = hx[j] - hx[i];
+            double ey = hy[j] - hy[i];
+            double len = Math.sqrt(ex*ex + ey*ey);
+            double ux = ex / len;
+            double uy = ey / len;
+
+            // along edge (u), out from edge into hull (n = u rotated left)
+            while (dot(hx, hy, (right+1) % h, i, ux, uy) > dot(hx, hy, right, i, ux, uy)) right = (right+1) % h;
+            while (dot(hx, hy, (far+1) % h, i, -uy, ux) > dot(hx, hy, far, i, -uy, ux)) far = (far+1) % h;
+            if (left < 0) left = far;
+            while (dot(hx, hy, (left+1) % h, i, ux, uy) < dot(hx, hy, left, i, ux, uy)) left = (left+1) % h;
+
+            double uMin = dot(hx, hy, left, i, ux, uy);
+            double uMax = dot(hx, hy, right, i, ux, uy);
+            double nMax = dot(hx, hy, far, i, -uy, ux);
+            double area = (uMax - uMin) * nMax;
 
             if (area < minArea) {
                 minArea = area;
-                bestCs = cs;
+                bestCs = new double[][]{
+                    { hx[i] + uMin*ux, hy[i] + uMin*uy },
+                    { hx[i] + uMax*ux, hy[i] + uMax*uy },
+                    { hx[i] + uMax*ux - nMax*uy, hy[i] + uMax*uy + nMax*ux },
+                    { hx[i] + uMin*ux - nMax*uy, hy[i] + uMin*uy + nMax*ux } };
             }
         }
         return bestCs;
     }
 
+    /**
+     * @return Projection of (h[o]->h[k]) on [vx,vy].
+     */
+    public/***/ static double dot(int[] hx, int[] hy, int k, int o, double vx, double vy) {
+        return (hx[k] - hx[o]) * vx + (hy[k] - hy[o]) * vy;
+    }
+
     /**
      * @param ps Points.
      * @return Points in ps with at least one side "free".
      */
     public/***/ static LinkedList<int[]> getOuterPoints(LinkedList<int[]> ps) {
-        LinkedList<int[]> outer = new LinkedList<int[]>();
-
-        for (int[] p : ps) {
-            int[] left = new int[]{ p[0]-1, p[1] };
-            int[] up = new int[]{ p[0], p[1]-1 };
-            int[] right = new int[]{ p[0]+1, p[1] };
-            int[] down = new int[]{ p[0], p[1]+1 };
-
-            if (!Math2.contains(left, ps) ||
-                !Math2.contains(up, ps) ||
-                !Math2.contains(right, ps) ||
-                !Math2.contains(down, ps)) {
-                outer.add(p);
+        return getOuterPoints(new PointSet(ps)).toList();
+    }
+    public/***/ static PointSet getOuterPoints(PointSet ps) {
+        PointSet outer = new PointSet();
+        for (int i = 0; i < ps.size(); i++) {
+            int x = ps.getX(i);
+            int y = ps.getY(i);
+            if (!ps.contains(x-1, y) || !ps.contains(x, y-1) ||
+                !ps.contains(x+1, y) || !ps.contains(x, y+1)) {
+                outer.add(x, y);
             }
         }
-
         return outer;
     }
 
@@ -346,24 +480,24 @@ public class Box {
     public/***/ static int[][] furthestFromLine(double[] p, double[] v, LinkedList<int[]> ps) {
         double minD = Double.POSITIVE_INFINITY;
         double maxD = Double.NEGATIVE_INFINITY;
-        int minI = -1;
-        int maxI = -1;
 
-        for (int i = 0; i < ps.size(); i++) {
-            double[] q = Math2.toDouble(ps.get(i));
-            double d = Math2.distance(q, p, v);
+        int[] minP = null;
+        int[] maxP = null;
+
+        for (int[] q : ps) {
+            double d = Math2.distance(Math2.toDouble(q), p, v);
 
             if (d < minD) {
                 minD = d;
-                minI = i;
+                minP = q;
             }
             if (d > maxD) {
                 maxD = d;
-                maxI = i;
+                maxP = q;
             }
         }
 
-        return new int[][]{ ps.get(minI), ps.get(maxI) };
+        return new int[][]{ minP, maxP };
     }
 
     /**
@@ -375,6 +509,9 @@ public class Box {
      * @return [topL, topR, bottomR, bottomL]
      */
     public/***/ static double[][] orderByDirection(double[][] cs, LinkedList<int[]> ps) {
+        return orderByDirection(cs, new PointSet(ps));
+    }
+    public/***/ static double[][] orderByDirection(double[][] cs, PointSet ps) {
         double SUFFICIENT_OPENING_SIZE = 1.5;
 
         int shortSideI = 0;
@@ -410,16 +547,18 @@ public class Box {
      * @return "Opening size indicator"
      */
     public/***/ static double openingSize(double[] c0, double[] c1, LinkedList<int[]> ps) {
+        return openingSize(c0, c1, new PointSet(ps));
+    }
+    public/***/ static double openingSize(double[] c0, double[] c1, PointSet ps) {
         int[] start = Math2.toInt(Math2.mean(new double[][]{c0, c1}));
-        int[] mid = Math2.toInt(Math2.mean(ps));
+        int[] mid = Math2.toInt(ps.mean());
         double length = Math2.distance(start, mid) * 1.5;
         int[] end = Math2.step(start, Math2.toDouble(Math2.minus(mid, start)), length);
 
         PixelWalk pw = new PixelWalk(start, end);
-        int[] p;
-
-        while ((p = pw.next()) != null) {
-            if (Math2.contains(p, ps)) return Math2.distance(p, start);
+        while (pw.hasNext()) {
+            pw.advance();
+            if (ps.contains(pw.x(), pw.y())) return Math2.distance(new int[]{ pw.x(), pw.y() }, start);
         }
 
         LOGGER.severe("Box.openingSize(): Bad box-shape");
@@ -1,17 +1,8 @@
 package map;
 
 import java.io.IOException;
-import java.io.FileReader;
-import java.util.LinkedList;
 import java.awt.Color;
 
-import com.google.gson.JsonParser;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 
 /**
  * Static class for converting between color and category.
@@ -22,40 +13,14 @@ import com.google.gson.GsonBuilder;
 public class CategoryDecoder {
 
     /**
-     * Path to json-table. An array of label-types (source-layer,
-     * and property-value defined by mapbox) and the corresponding
-     * categories (defined in Category-enum). The labels in a box-image
-     * are color-coded based on index in this array. */
-    public/***/ static final String TABLE_PATH = "labelTypeTable.json";
-
-    /**
-     * Parsed json-table: a list if Categories where the index of
-     * a category is encoded in the label-color in a box-image. */
-    public/***/ static LinkedList<Category> colorCategoryMappings = null;
-
-    /**
-     * Creates the mappings by loading json-table from file and
-     * parsing it. Call before all else.
+     * Loads the json-table of label-types (see DecoderRegistry), if
+     * not loaded. An array of label-types (source-layer, and
+     * property-value defined by mapbox) and the corresponding
+     * categories (defined in Category-enum). The labels in a
+     * box-image are color-coded based on index in this array.
      */
     public static void init() throws IOException {
-        colorCategoryMappings = new LinkedList<Category>();
-        JsonArray elems = new JsonParser().parse(new FileReader(TABLE_PATH)).getAsJsonArray();
-
-        for (int i = 0; i < elems.size(); i++) {
-            JsonObject elem = elems.get(i).getAsJsonObject();
-            JsonArray values = elem.getAsJsonArray("values");
-
-            for (int j = 0; j < values.size(); j++) {
-                JsonArray type_cat = values.get(j).getAsJsonArray();
-                String catStr = type_cat.get(1).getAsString();
-                Category cat = Category.find(catStr);
-                if (cat == null) {
-                    throw new RuntimeException("Category in json-table but not in Category-enum: " + catStr);
-                }
-
-                colorCategoryMappings.add(cat);
-            }
-        }
+        DecoderRegistry.get();
     }
 
     /**
@@ -64,39 +29,83 @@ public class CategoryDecoder {
      * @return Category of label described by lay.
      */
     public static Category decode(LabelLayout lay, TiledImage boxImg) throws UnknownCategoryException, IOException {
-        Color avg = lay.getAverageColor(boxImg);
-        int index = colorToIndex(avg);
-        if (index == colorCategoryMappings.size())
+        return decode(lay, boxImg, DecoderRegistry.get());
+    }
+
+    /**
+     * If true, every label-pixel is classified by its color, and the
+     * most common category wins. Otherwise the average color of the
+     * label is classified. */
+    public static boolean PIXEL_VOTING = false;
+
+    /**
+     * Base-5 digit [0,4] of color-component [0,255]. */
+    public/***/ static final int[] DIGITS = new int[256];
+    static {
+        double f = 256 / 5d;
+        for (int v = 0; v < 256; v++) DIGITS[v] = (int)(v / f);
+    }
+
+    /**
+     * All categories, indexed by ordinal. */
+    public/***/ static final Category[] CATEGORIES = Category.values();
+
+    /**
+     * @param reg Registry with color-category-mappings.
+     */
+    public static Category decode(LabelLayout lay, TiledImage boxImg, DecoderRegistry reg) throws UnknownCategoryException, IOException {
+        LabelStats st = lay.getStats(boxImg);
+        Category c = PIXEL_VOTING ? vote(st.getHistogram(), reg) : average(st, reg);
+        if (c == null)
             throw new UnknownCategoryException();
 
-        return colorCategoryMappings.get(index);
+        return c;
     }
 
     /**
-     * Decodes color to index [0, len(mappings)].
-     * Decoded index = len(mappings) means unknown label-type
-     * (not defined in labelTypeTable.json so color fell to
-     * default color-value).
+     * @return Category of the average color, or NULL if unknown.
+     */
+    public/***/ static Category average(LabelStats st, DecoderRegistry reg) {
+        Color avg = st.getAverageColor();
+        return reg.getColorCategory(colorCode(avg.getRed(), avg.getGreen(), avg.getBlue()));
+    }
+
+    /**
+     * @param histogram Number of pixels of every color-code.
+     * @return Most common category of pixels (lowest ordinal if
+     * tie), or NULL if unknown is most common.
+     */
+    public/***/ static Category vote(int[] histogram, DecoderRegistry reg) {
+        int[] votes = new int[CATEGORIES.length + 1];
+        for (int code = 0; code < histogram.length; code++) {
+            Category c = reg.getColorCategory(code);
+            votes[c == null ? CATEGORIES.length : c.ordinal()] += histogram[code];
+        }
+
+        int best = CATEGORIES.length;
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            if (votes[i] > votes[best]) best = i;
+        }
+        return best == CATEGORIES.length ? null : CATEGORIES[best];
+    }
+
+    /**
+     * Decodes color to color-code [0, 124], which the registry maps
+     * to a category (see DecoderRegistry.getColorCategory()).
      *
      * Conversion:
      * - r,g,b [0-255] scaled to d1,d2,d3 [0,4].
      * - d1 d2 d3 is a number n in base 5.
      * - n transformed to base 10 [0, 124].
-     * - n scaled to [0, mappings.length] = index.
      *
-     * @return index [0, len(mappings)]
+     * The registry scales n to [0, len(mappings)], where
+     * len(mappings) means unknown label-type (not defined in
+     * labelTypeTable.json so color fell to default color-value).
      */
-    public/***/ static int colorToIndex(Color c) throws IOException {
-        if (colorCategoryMappings == null)
-            throw new RuntimeException("Call init() !");
-
-        double f = 256 / 5d;
-        int d1 = (int)(c.getRed() / f);
-        int d2 = (int)(c.getGreen() / f);
-        int d3 = (int)(c.getBlue() / f);
-        int n = d1*5*5 + d2*5 + d3;
-        f = colorCategoryMappings.size() / 124f;
-        int index = Math2.toInt(n * f);
-        return index;
+    public/***/ static int colorCode(int r, int g, int b) {
+        return DIGITS[r]*5*5 + DIGITS[g]*5 + DIGITS[b];
+    }
+    public/***/ static int colorCode(int argb) {
+        return colorCode((argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff);
     }
 }
@@ -0,0 +1,252 @@
+package map;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Connected-component labelling of a box-map (see LabelLayoutIterator):
+ * every set point gets the id of the component (4-connected set of
+ * points) it belongs to.
+ *
+ * Labels runs (horizontal stretches of set points, found a word at a
+ * time) rather than points. First pass gives every run a provisional
+ * label from the runs it overlaps in the row above, recording
+ * equivalent labels in a union-find structure (with path
+ * compression). Second pass replaces labels with their final id.
+ * Ids are numbered in order of first point (row by row), starting
+ * at 0.
+ *
+ * Memory is per run and per set point, never per point of the map.
+ * Points of every component are kept together, so a component is
+ * looked up in time proportional to its size.
+ */
+public class ComponentLabeling {
+
+    /**
+     * Dims of the map. */
+    public/***/ final int width, height;
+
+    /**
+     * Runs of row y are rowStart[y] ... rowStart[y+1]-1, left to
+     * right. Run j covers x = runX0[j] ... runX1[j] and belongs to
+     * component runIds[j]. */
+    public/***/ final int[] rowStart;
+    public/***/ int[] runX0;
+    public/***/ int[] runX1;
+    public/***/ int[] runIds;
+
+    /**
+     * Points (index y*width+x) of component i are
+     * points[start[i]] ... points[start[i+1]-1], row by row. */
+    public/***/ final int[] points;
+    public/***/ final int[] start;
+
+    /**
+     * Bounds of component i: [xmin ymin xmax ymax] at bounds[4*i]. */
+    public/***/ final int[] bounds;
+
+    /**
+     * @param map Map where set points are labelled.
+     */
+    public ComponentLabeling(BitMap map) {
+        this.height = map.getHeight();
+        this.width = map.getWidth();
+        this.rowStart = new int[this.height + 1];
+        this.runX0 = new int[64];
+        this.runX1 = new int[64];
+        this.runIds = new int[64];
+
+        // pass 1: provisional labels, union equivalent ones
+        int[] parent = new int[64];
+        int n = 0;
+        int nr = 0;
+
+        for (int y = 0; y < this.height; y++) {
+            this.rowStart[y] = nr;
+            int up = y > 0 ? this.rowStart[y-1] : 0;
+            int upEnd = nr;
+
+            int x0 = map.nextSetBit(0, y);
+            while (x0 >= 0) {
+                int x1 = map.nextClearBit(x0, y) - 1;
+
+                // runs above overlapping [x0,x1]
+                while (up < upEnd && this.runX1[up] < x0) up++;
+                int l = -1;
+                for (int j = up; j < upEnd && this.runX0[j] <= x1; j++) {
+                    l = l < 0 ? find(parent, this.runIds[j]) : union(parent, l, this.runIds[j]);
+                }
+                if (l < 0) {
+                    if (n == parent.length) parent = Arrays.copyOf(parent, n*2);
+                    parent[n] = n;
+                    l = n++;
+                }
+
+                if (nr == this.runIds.length) growRuns();
+                this.runX0[nr] = x0;
+                this.runX1[nr] = x1;
+                this.runIds[nr++] = l;
+
+                x0 = x1+1 < this.width ? map.nextSetBit(x1+1, y) : -1;
+            }
+        }
+        this.rowStart[this.height] = nr;
+
+        // final ids: roots numbered in order of first point
+        int[] id = new int[n];
+        int count = 0;
+        for (int l = 0; l < n; l++) {
+            int root = find(parent, l);
+            id[l] = root == l ? count++ : id[root];
+        }
+
+        // pass 2: relabel, count sizes and bounds
+        int[] size = new int[count];
+        this.bounds = new int[4*count];
+        for (int c = 0; c < count; c++) {
+            this.bounds[4*c] = Integer.MAX_VALUE;
+            this.bounds[4*c+1] = Integer.MAX_VALUE;
+            this.bounds[4*c+2] = -1;
+            this.bounds[4*c+3] = -1;
+        }
+
+        for (int y = 0; y < this.height; y++) {
+            for (int j = this.rowStart[y]; j < this.rowStart[y+1]; j++) {
+                int c = id[this.runIds[j]];
+                this.runIds[j] = c;
+                size[c] += this.runX1[j] - this.runX0[j] + 1;
+
+                int b = 4*c;
+                if (this.runX0[j] < this.bounds[b]) this.bounds[b] = this.runX0[j];
+                if (y < this.bounds[b+1]) this.bounds[b+1] = y;
+                if (this.runX1[j] > this.bounds[b+2]) this.bounds[b+2] = this.runX1[j];
+                if (y > this.bounds[b+3]) this.bounds[b+3] = y;
+            }
+        }
+
+        // points grouped by component
+        this.start = new int[count + 1];
+        for (int c = 0; c < count; c++) this.start[c+1] = this.start[c] + size[c];
+
+        this.points = new int[this.start[count]];
+        int[] next = Arrays.copyOf(this.start, count);
+        for (int y = 0; y < this.height; y++) {
+            for (int j = this.rowStart[y]; j < this.rowStart[y+1]; j++) {
+                int c = this.runIds[j];
+                for (int x = this.runX0[j]; x <= this.runX1[j]; x++) {
+                    this.points[ next[c]++ ] = y*this.width + x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubles the capacity of the run-arrays.
+     */
+    public/***/ void growRuns() {
+        int n = this.runIds.length * 2;
+        this.runX0 = Arrays.copyOf(this.runX0, n);
+        this.runX1 = Arrays.copyOf(this.runX1, n);
+        this.runIds = Arrays.copyOf(this.runIds, n);
+    }
+
+    /**
+     * @return Root of label l, compressing the path on the way.
+     */
+    public/***/ static int find(int[] parent, int l) {
+        while (parent[l] != l) {
+            parent[l] = parent[parent[l]];
+            l = parent[l];
+        }
+        return l;
+    }
+
+    /**
+     * Joins the sets of labels a and b.
+     * @return Root of the joined set (the smaller root).
+     */
+    public/***/ static int union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra < rb) {
+            parent[rb] = ra;
+            return ra;
+        }
+        parent[ra] = rb;
+        return rb;
+    }
+
+    /**
+     * @return Number of components.
+     */
+    public int getNoComponents() {
+        return this.start.length - 1;
+    }
+
+    /**
+     * @return Id of component containing [x,y], or -1 if [x,y] not
+     * set (or outside).
+     */
+    public int getId(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) return -1;
+
+        // last run of row starting at or before x
+        int lo = this.rowStart[y];
+        int hi = this.rowStart[y+1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.runX0[mid] <= x) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        if (hi < this.rowStart[y] || this.runX1[hi] < x) return -1;
+        return this.runIds[hi];
+    }
+
+    /**
+     * @return Number of points in component.
+     */
+    public int getSize(int id) {
+        return this.start[id+1] - this.start[id];
+    }
+
+    /**
+     * @return [xmin ymin xmax ymax] of component.
+     */
+    public int[] getBounds(int id) {
+        return Arrays.copyOfRange(this.bounds, 4*id, 4*id + 4);
+    }
+
+    /**
+     * @return True if component has a point at the edge of the map.
+     */
+    public boolean touchesEdge(int id) {
+        int b = 4*id;
+        return
+            this.bounds[b] == 0 ||
+            this.bounds[b+1] == 0 ||
+            this.bounds[b+2] == this.width-1 ||
+            this.bounds[b+3] == this.height-1;
+    }
+
+    /**
+     * @return All points [x,y] of component, row by row.
+     */
+    public LinkedList<int[]> getPoints(int id) {
+        LinkedList<int[]> ps = new LinkedList<int[]>();
+        for (int k = this.start[id]; k < this.start[id+1]; k++) {
+            int i = this.points[k];
+            ps.add(new int[]{ i % this.width, i / this.width });
+        }
+        return ps;
+    }
+
+    /**
+     * Adds all points of component to dest, row by row.
+     */
+    public void getPoints(int id, PointSet dest) {
+        for (int k = this.start[id]; k < this.start[id+1]; k++) {
+            int i = this.points[k];
+            dest.add(i % this.width, i / this.width);
+        }
+    }
+}
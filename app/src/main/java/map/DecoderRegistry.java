@@ -0,0 +1,221 @@
+package map;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.gson.JsonParser;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Tables used for decoding labels: code-font-mappings (see
+ * LabelTextDecoder) and color-category-mappings (see
+ * CategoryDecoder). Immutable, so safe to share between threads.
+ *
+ * The current registry is loaded once, when first asked for, and
+ * can be swapped for another version at any time. A build keeps
+ * the registry it started with, so in-flight builds are unaffected
+ * by a swap.
+ */
+public final class DecoderRegistry {
+
+    /**
+     * File-names of json-tables, looked up on the classpath first,
+     * then in the working dir. */
+    public static final String MAPPINGS_PATH = "codeFontMappings.json";
+    public static final String TABLE_PATH = "labelTypeTable.json";
+
+    /**
+     * The current registry, NULL until loaded. */
+    public/***/ static final AtomicReference<DecoderRegistry> CURRENT =
+        new AtomicReference<DecoderRegistry>();
+
+    /**
+     * Unicode-point of decoded code (index). */
+    public/***/ final int[] codePoints;
+
+    /**
+     * Category of color-index. */
+    public/***/ final Category[] categories;
+
+    /**
+     * Number of color-codes, see CategoryDecoder.colorCode(). */
+    public static final int NO_COLOR_CODES = 125;
+
+    /**
+     * Category of every color-code, NULL for unknown label-type.
+     * Compiled from categories. */
+    public/***/ final Category[] colorTable = new Category[NO_COLOR_CODES];
+
+    /**
+     * @param codePoints Unicode-point of every code. Copied.
+     * @param categories Category of every color-index. Copied.
+     */
+    public DecoderRegistry(int[] codePoints, Category[] categories) {
+        this.codePoints = codePoints.clone();
+        this.categories = categories.clone();
+
+        float f = this.categories.length / 124f;
+        for (int n = 0; n < NO_COLOR_CODES; n++) {
+            int index = Math2.toInt(n * f);
+            this.colorTable[n] = index < this.categories.length ? this.categories[index] : null;
+        }
+    }
+
+    /**
+     * @return The current registry. Loaded (see load()) if none.
+     */
+    public static DecoderRegistry get() throws IOException {
+        DecoderRegistry reg = CURRENT.get();
+        if (reg != null) return reg;
+
+        synchronized (CURRENT) {
+            reg = CURRENT.get();
+            if (reg == null) {
+                reg = load();
+                CURRENT.set(reg);
+            }
+            return reg;
+        }
+    }
+
+    /**
+     * Makes reg the current registry. Builds already started keep
+     * using the previous one.
+     *
+     * @param reg New registry, or NULL to load again when next asked
+     * for.
+     * @return The previous registry (might be NULL).
+     */
+    public static DecoderRegistry swap(DecoderRegistry reg) {
+        return CURRENT.getAndSet(reg);
+    }
+
+    /**
+     * Loads the json-tables again and makes them current.
+     * @return The new registry.
+     */
+    public static DecoderRegistry reload() throws IOException {
+        DecoderRegistry reg = load();
+        swap(reg);
+        return reg;
+    }
+
+    /**
+     * @return Registry of json-tables on the classpath, or else in
+     * the working dir.
+     */
+    public static DecoderRegistry load() throws IOException {
+        JsonArray mappings;
+        JsonArray table;
+        try (Reader r = open(MAPPINGS_PATH)) {
+            mappings = new JsonParser().parse(r).getAsJsonArray();
+        }
+        try (Reader r = open(TABLE_PATH)) {
+            table = new JsonParser().parse(r).getAsJsonArray();
+        }
+        return parse(mappings, table);
+    }
+
+    /**
+     * @return Registry of json-tables in dir.
+     */
+    public static DecoderRegistry load(Path dir) throws IOException {
+        JsonArray mappings;
+        JsonArray table;
+        try (Reader r = Files.newBufferedReader(dir.resolve(MAPPINGS_PATH), StandardCharsets.UTF_8)) {
+            mappings = new JsonParser().parse(r).getAsJsonArray();
+        }
+        try (Reader r = Files.newBufferedReader(dir.resolve(TABLE_PATH), StandardCharsets.UTF_8)) {
+            table = new JsonParser().parse(r).getAsJsonArray();
+        }
+        return parse(mappings, table);
+    }
+
+    /**
+     * @return Reader of resource on the classpath, or else of file
+     * in the working dir.
+     */
+    public/***/ static Reader open(String name) throws IOException {
+        InputStream in = DecoderRegistry.class.getResourceAsStream("/" + name);
+        if (in != null) return new InputStreamReader(in, StandardCharsets.UTF_8);
+        return Files.newBufferedReader(Paths.get(name), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param mappings Code-font-mappings: array of unicode-points.
+     * @param table Label-type-table: array of label-types, each with
+     * values [type, category].
+     */
+    public/***/ static DecoderRegistry parse(JsonArray mappings, JsonArray table) {
+        int[] codePoints = new int[mappings.size()];
+        for (int i = 0; i < codePoints.length; i++)
+            codePoints[i] = mappings.get(i).getAsInt();
+
+        List<Category> cats = new ArrayList<Category>();
+        for (int i = 0; i < table.size(); i++) {
+            JsonObject elem = table.get(i).getAsJsonObject();
+            JsonArray values = elem.getAsJsonArray("values");
+
+            for (int j = 0; j < values.size(); j++) {
+                JsonArray type_cat = values.get(j).getAsJsonArray();
+                String catStr = type_cat.get(1).getAsString();
+                Category cat = Category.find(catStr);
+                if (cat == null) {
+                    throw new RuntimeException("Category in json-table but not in Category-enum: " + catStr);
+                }
+                cats.add(cat);
+            }
+        }
+
+        return new DecoderRegistry(codePoints, cats.toArray(new Category[cats.size()]));
+    }
+
+    /**
+     * @return Number of codes (max decodable code + 1).
+     */
+    public int getNoCodes() {
+        return this.codePoints.length;
+    }
+
+    /**
+     * @return Unicode-point of code.
+     * @pre 0 <= code < getNoCodes()
+     */
+    public int getCodePoint(int code) {
+        return this.codePoints[code];
+    }
+
+    /**
+     * @return Number of categories in color-table.
+     */
+    public int getNoCategories() {
+        return this.categories.length;
+    }
+
+    /**
+     * @return Category of color-index.
+     * @pre 0 <= index < getNoCategories()
+     */
+    public Category getCategory(int index) {
+        return this.categories[index];
+    }
+
+    /**
+     * @return Category of color-code (see CategoryDecoder.colorCode()),
+     * or NULL if unknown label-type.
+     * @pre 0 <= code < NO_COLOR_CODES
+     */
+    public Category getColorCategory(int code) {
+        return this.colorTable[code];
+    }
+}
@@ -23,11 +23,28 @@ public class Label {
      * @throws JunkException if lay describes a junk-label.
      */
     public Label(LabelLayout lay, TiledImage codeImg, TiledImage boxImg) throws JunkException, UnknownCharacterException, UnknownCategoryException, IOException {
+        this(lay, LabelTextDecoder.decode(lay, codeImg), boxImg);
+    }
+
+    /**
+     * Finds category by decoding boxImg, text already decoded (see
+     * LabelTextDecoder.Batch).
+     *
+     * @throws JunkException if lay describes a junk-label.
+     */
+    public Label(LabelLayout lay, String text, TiledImage boxImg) throws JunkException, UnknownCategoryException, IOException {
+        this(lay, text, boxImg, DecoderRegistry.get());
+    }
+
+    /**
+     * @param reg Registry used for decoding category.
+     */
+    public Label(LabelLayout lay, String text, TiledImage boxImg, DecoderRegistry reg) throws JunkException, UnknownCategoryException, IOException {
         this.layout = lay;
-        this.text = LabelTextDecoder.decode(lay, codeImg);
+        this.text = text;
 
         try {
-            this.category = CategoryDecoder.decode(lay, boxImg);
+            this.category = CategoryDecoder.decode(lay, boxImg, reg);
         }
         catch (UnknownCategoryException e) {
             throw new UnknownCategoryException("Unknown label category of label with text: " + this.text);
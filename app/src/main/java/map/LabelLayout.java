@@ -15,6 +15,19 @@ import java.awt.Color;
 public class LabelLayout {
     public/***/ LinkedList<LinkedList<Box>> letterBoxes = new LinkedList<LinkedList<Box>>();
 
+    /**
+     * Max distance between bounds of same layouts, see same(). */
+    public static final double SAME_DELTA = 10;
+
+    /**
+     * Bounds, computed when first asked for. Reset when a row is
+     * added. */
+    public/***/ double[] bounds = null;
+
+    /**
+     * Pixel-statistics from detection, NULL if not known. */
+    public/***/ LabelStats stats = null;
+
     /**
      * Constructs a LabelLayout from a label-row.
      *
@@ -31,6 +44,7 @@ public class LabelLayout {
      */
     public void addRowFirst(LinkedList<Box> row) {
         letterBoxes.addFirst(row);
+        this.bounds = null;
     }
 
     /**
@@ -38,6 +52,7 @@ public class LabelLayout {
      */
     public void addRowLast(LinkedList<Box> row) {
         letterBoxes.addLast(row);
+        this.bounds = null;
     }
 
     /**
@@ -155,17 +170,27 @@ public class LabelLayout {
      * @return [xmin, ymin, xmax, ymax]
      */
     public double[] getBounds() {
+        if (this.bounds == null) this.bounds = computeBounds();
+        return this.bounds.clone();
+    }
+
+    /**
+     * @return [xmin, ymin, xmax, ymax], from the boxes.
+     */
+    public/***/ double[] computeBounds() {
         double xmin = Double.POSITIVE_INFINITY;
         double ymin = Double.POSITIVE_INFINITY;
         double xmax = Double.NEGATIVE_INFINITY;
         double ymax = Double.NEGATIVE_INFINITY;
 
-        for (Box b : getBoxes()) {
-            double[] bb = b.getBounds();
-            if (bb[0] < xmin) xmin = bb[0];
-            if (bb[1] < ymin) ymin = bb[1];
-            if (bb[2] > xmax) xmax = bb[2];
-            if (bb[3] > ymax) ymax = bb[3];
+        for (LinkedList<Box> row : letterBoxes) {
+            for (Box b : row) {
+                double[] bb = b.getBounds();
+                if (bb[0] < xmin) xmin = bb[0];
+                if (bb[1] < ymin) ymin = bb[1];
+                if (bb[2] > xmax) xmax = bb[2];
+                if (bb[3] > ymax) ymax = bb[3];
+            }
         }
         return new double[]{xmin, ymin, xmax, ymax};
     }
@@ -205,6 +230,9 @@ public class LabelLayout {
                 b.addOffset(addX, addY);
             }
         }
+        cpy.bounds = null;
+        if (this.stats != null)
+            cpy.stats = this.stats.addOffset(Math2.toInt(addX), Math2.toInt(addY));
         return cpy;
     }
 
@@ -217,15 +245,14 @@ public class LabelLayout {
      * @return True if this layout is similar to other.
      */
     public boolean same(LabelLayout other) {
-        double DELTA = 10;
-
         return
             this.getNoBoxes() == other.getNoBoxes() &&
-            Math2.same(this.getBounds(), other.getBounds(), DELTA);
+            Math2.same(this.getBounds(), other.getBounds(), SAME_DELTA);
     }
 
     /**
      * @return True if sufficiently similar to any layout in lays.
+     * Linear in size of lays, see LayoutIndex for many layouts.
      */
     public boolean sameAsAny(LinkedList<LabelLayout> lays) {
         for (LabelLayout l : lays) {
@@ -243,6 +270,7 @@ public class LabelLayout {
         for (int r = 1; r < getNoRows(); r++) {
             dest.addRowLast(getRow(r));
         }
+        dest.stats = this.stats;
 
         return dest;
     }
@@ -266,12 +294,35 @@ public class LabelLayout {
      * @return Avg color of pixels in bimg of lay.
      */
     public Color getAverageColor(TiledImage bimg) throws IOException {
+        return getStats(bimg).getAverageColor();
+    }
+
+    /**
+     * @return Pixel-statistics from detection, or NULL if not known.
+     */
+    public LabelStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * @param bimg Box-image containing this label-layout.
+     * @return Pixel-statistics from detection, or else gathered from
+     * pixels in bimg of lay.
+     */
+    public LabelStats getStats(TiledImage bimg) throws IOException {
+        if (this.stats != null) return this.stats;
+
         int[] bs = Math2.getInsideBounds(Math2.toIntBounds(getBounds()), bimg.getWidth(), bimg.getHeight());
 
         BasicImage sub = bimg.getSubImage(bs);
         LabelLayout lay = addOffset(-bs[0], -bs[1]);
         LinkedList<int[]> ps = lay.getLabelPoints(sub);
-        return sub.getAverageColor(ps);
+
+        LabelStats st = new LabelStats();
+        for (int[] p : ps) {
+            if (sub.isInside(p)) st.add(p[0] + bs[0], p[1] + bs[1], sub.getARGB(p[0], p[1]));
+        }
+        return st;
     }
 
     /**
@@ -2,9 +2,14 @@ package map;
 
 import java.awt.Color;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Arrays;
 import java.awt.Color;
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import static loca.Utils.*;
 
 
 /**
@@ -94,9 +99,29 @@ public class LabelLayoutIterator {
     public/***/ int startX = 0;
     public/***/ int startY = 0;
 
-    /** Representation of box-image: map[row][column]. */
-    public/***/ boolean[][] map;
-    public/***/ boolean[][] untouchedMap;
+    /** Representation of box-image, a bit per pixel. untouchedMap
+     * is a (copy-on-write) snapshot of map before any removals. */
+    public/***/ BitMap map;
+    public/***/ BitMap untouchedMap;
+
+    /** Connected box-points of the (untouched) map. Points are only
+     * removed from the map a whole component at a time, so a
+     * box-point's component is the same in map and untouchedMap. */
+    public/***/ ComponentLabeling components;
+
+    /** If not null, box-points of returned labels are set here, and
+     * bounds of labels skipped for being at the edge are added to
+     * edgeLabels (see getLayoutsStitched()). */
+    public/***/ BitMap consumed = null;
+    public/***/ LinkedList<int[]> edgeLabels = null;
+
+    /** Box-image the map was made from, and position of the map in
+     * it, for gathering pixel-statistics of returned labels (see
+     * LabelStats). Both NULL if not known. */
+    public/***/ BasicImage srcImg = null;
+    public/***/ TiledImage srcTiled = null;
+    public/***/ int srcX = 0;
+    public/***/ int srcY = 0;
 
     /**
      * Constructs the iterator from an rgba-image (box-image).
@@ -111,23 +136,8 @@ public class LabelLayoutIterator {
      * @pre 0 <= alphaThreshold <= 255
      */
     public LabelLayoutIterator(BasicImage img, int alphaThreshold) {
-        this.map = new boolean[img.getHeight()][img.getWidth()];
-        this.untouchedMap = new boolean[img.getHeight()][img.getWidth()];
-
-        for (int y = 0; y < img.getHeight(); y++) {
-            for (int x = 0; x < img.getWidth(); x++) {
-                Color c = img.getColor(x, y);
-                int alpha = c.getAlpha();
-                if (alpha >= alphaThreshold) {
-                    this.map[y][x] = true;
-                    this.untouchedMap[y][x] = true;
-                }
-                else {
-                    this.map[y][x] = false;
-                    this.untouchedMap[y][x] = false;
-                }
-            }
-        }
+        this(new BitMap(img, alphaThreshold));
+        this.srcImg = img;
     }
     /**
      * Constructor for using default value for alphaThreshold.
@@ -136,45 +146,95 @@ public class LabelLayoutIterator {
         this(img, DEFAULT_ALPHA_THRESHOLD);
     }
 
+    /**
+     * Constructs the iterator from a window of a box-image. Alpha-
+     * values are read straight from the tiles, the window is never
+     * copied.
+     *
+     * @param img A box-image.
+     * @param bs Window [xmin ymin xmax ymax], inside img. Found
+     * layouts are positioned in the window.
+     */
+    public LabelLayoutIterator(TiledImage img, int[] bs, int alphaThreshold) throws IOException {
+        this(new BitMap(img, bs, alphaThreshold));
+        setSource(img, bs);
+    }
+    public LabelLayoutIterator(TiledImage img, int[] bs) throws IOException {
+        this(img, bs, DEFAULT_ALPHA_THRESHOLD);
+    }
+
+    /**
+     * Constructs the iterator from a map of box-points.
+     */
+    public/***/ LabelLayoutIterator(BitMap map) {
+        this.map = map;
+        this.untouchedMap = map.snapshot();
+        this.components = new ComponentLabeling(map);
+    }
+
+    /**
+     * Sets the box-image that the map is window bs of.
+     */
+    public/***/ void setSource(TiledImage img, int[] bs) {
+        this.srcTiled = img;
+        this.srcX = bs[0];
+        this.srcY = bs[1];
+    }
+
     /**
      * Finds and returns next layout. Starts searching at startX
      * startY, and sets this to found box-point. Removes
-     * found label from map so it's not found again.
+     * found label from map so it's not found again. Skips (and
+     * removes) points that don't expand to a layout, and edge-labels.
+     *
+     * Box-points are only ever removed, so all points before
+     * startX,startY stay empty: the whole map is scanned once.
      *
      * @return Iterator's next label layout. NULL if no more.
      */
     public LabelLayout next() {
-        int[] p = findBoxPoint(this.startX, this.startY);
-        if (p == null) return null;
+        int[] p;
+        while ((p = findBoxPoint(this.startX, this.startY)) != null) {
+            this.startX = p[0];
+            this.startY = p[1];
+
+            LabelLayout lay = expandToLabelLayout(p);
+            if (lay == null) {
+                expandAndRemove(p);
+                continue;
+            }
 
-        this.startX = p[0];
-        this.startY = p[1];
+            PointSet ps = PointSet.acquire();
+            try {
+                removeLabel(lay, ps);
+                if (isBoxPoint(p)) expandAndRemove(p);
 
-        LabelLayout lay = expandToLabelLayout(p);
-        if (lay == null) {
-            expandAndRemove(p);
-            return next();
+                if (!isEdgeLabel(lay)) {
+                    if (this.consumed != null)
+                        for (int i = 0; i < ps.size(); i++) this.consumed.set(ps.getX(i), ps.getY(i));
+                    lay.stats = getStats(ps);
+                    return lay;
+                }
+            }
+            finally {
+                PointSet.release(ps);
+            }
+            if (this.edgeLabels != null)
+                this.edgeLabels.add(Math2.toIntBounds(lay.getBounds()));
         }
-
-        removeLabel(lay);
-        if (!isEdgeLabel(lay)) return lay;
-        else return next();
+        return null;
     }
 
     /**
-     * Scans through the map, looking for a box-point.
+     * Scans through the map, row by row, looking for a box-point.
      *
-     * @return A box-point in the map, or NULL if no more
-     * box-points, as [x,y].
+     * @param startX Start at this column in start-row.
+     * @param startY Start-row.
+     * @return First box-point in the map at or after start, or NULL
+     * if no more box-points, as [x,y].
      */
     public/***/ int[] findBoxPoint(int startX, int startY) {
-        for (int y = 0; y < map.length; y++) {
-            for (int x = 0; x < map[y].length; x++) {
-                if (isBoxPoint(x, y))
-                    return new int[]{x, y};
-            }
-        }
-        return null;
+        return map.nextSetPoint(startX, startY);
     }
 
     /**
@@ -251,13 +311,13 @@ public class LabelLayoutIterator {
      * @pre startRow has no rotation and a straight base-line.
      */
     public/***/ LabelLayout addRows(boolean up, LinkedList<Box> startRow, LabelLayout lay) {
-        LinkedList<Box> neigh = findNeighborRow(up, startRow);
-        if (neigh == null) return lay;
-
-        if (up) lay.addRowFirst(neigh);
-        else lay.addRowLast(neigh);
+        LinkedList<Box> neigh = startRow;
 
-        return addRows(up, neigh, lay);
+        while ((neigh = findNeighborRow(up, neigh)) != null) {
+            if (up) lay.addRowFirst(neigh);
+            else lay.addRowLast(neigh);
+        }
+        return lay;
     }
 
     /**
@@ -266,11 +326,12 @@ public class LabelLayoutIterator {
      * point of every letter-box.
      *
      * @param lay LabelLayout for the label to be removed.
+     * @param removed The removed box-points are added here.
      */
-    public/***/ void removeLabel(LabelLayout lay) {
+    public/***/ void removeLabel(LabelLayout lay, PointSet removed) {
         for (Box b : lay.getBoxes()) {
             int[] bp = getInsideBoxPoint(b);
-            expandAndRemove(bp);
+            expandAndRemove(bp, removed);
         }
     }
 
@@ -278,8 +339,59 @@ public class LabelLayoutIterator {
      * Expands point to all connecting box-points, and removes them.
      */
     public/***/ void expandAndRemove(int[] p) {
-        LinkedList<int[]> ps = expandToBoxPoints(p);
-        for (int[] q : ps) map[ q[1] ][ q[0] ] = false;
+        expandAndRemove(p, null);
+    }
+
+    /**
+     * Expands point to all connecting box-points, and removes them.
+     * @param removed The removed box-points are added here, unless
+     * NULL.
+     */
+    public/***/ void expandAndRemove(int[] p, PointSet removed) {
+        if (!isBoxPoint(p)) return;
+
+        PointSet ps = removed != null ? removed : PointSet.acquire();
+        int from = ps.size();
+        this.components.getPoints(this.components.getId(p[0], p[1]), ps);
+        for (int i = from; i < ps.size(); i++) this.map.clear(ps.getX(i), ps.getY(i));
+        if (removed == null) PointSet.release(ps);
+    }
+
+    /**
+     * @return Pixel-statistics of points (positioned in map), read
+     * from the source box-image. NULL if no source.
+     */
+    public/***/ LabelStats getStats(PointSet ps) {
+        if (this.srcImg == null && this.srcTiled == null) return null;
+
+        LabelStats st = new LabelStats();
+        try {
+            for (int i = 0; i < ps.size(); i++) {
+                int x = ps.getX(i);
+                int y = ps.getY(i);
+                int argb = this.srcImg != null ?
+                    this.srcImg.getARGB(x, y) :
+                    this.srcTiled.getARGB(x + this.srcX, y + this.srcY);
+                st.add(x, y, argb);
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        return st;
+    }
+
+    /**
+     * @return Bounds of edge-labels skipped so far (see edgeLabels)
+     * and of components cut by the edge of the map.
+     */
+    public/***/ LinkedList<int[]> getEdgeFragments() {
+        LinkedList<int[]> bss = new LinkedList<int[]>(this.edgeLabels);
+        for (int id = 0; id < this.components.getNoComponents(); id++) {
+            if (this.components.touchesEdge(id))
+                bss.add(this.components.getBounds(id));
+        }
+        return bss;
     }
 
     /**
@@ -291,12 +403,9 @@ public class LabelLayoutIterator {
     public/***/ int[] getInsideBoxPoint(Box b) {
         int[] start = Math2.toInt(b.getTopLeft());
         int[] end = Math2.toInt(b.getBottomRight());
-        PixelWalk pw = new PixelWalk(start, end);
 
-        int[] p = null;
-        while ((p = pw.next()) != null) {
-            if (isBoxPoint(p)) return p;
-        }
+        int[] p = PixelWalk.firstSetPoint(this.map, start, end);
+        if (p != null) return p;
 
         throw new IllegalArgumentException();
     }
@@ -314,13 +423,13 @@ public class LabelLayoutIterator {
      * with all boxes to left/right of that box (in same label).
      */
     public/***/ LinkedList<Box> addBoxes(boolean left, Box start, LinkedList<Box> bs) {
-        Box neigh = findNeighborBox(left, start);
-        if (neigh == null) return bs;
-
-        if (left) bs.addFirst(neigh);
-        else bs.addLast(neigh);
+        Box neigh = start;
 
-        return addBoxes(left, neigh, bs);
+        while ((neigh = findNeighborBox(left, neigh)) != null) {
+            if (left) bs.addFirst(neigh);
+            else bs.addLast(neigh);
+        }
+        return bs;
     }
 
     /**
@@ -395,14 +504,7 @@ public class LabelLayoutIterator {
      * till end, or NULL if none/edge.
      */
     public/***/ int[] findBoxPointOnPath(int[] start, int[] end) {
-        PixelWalk pw = new PixelWalk(start, end);
-
-        int[] p;
-        while ((p=pw.next()) != null) {
-            if (isBoxPoint(p)) return p;
-        }
-
-        return null;
+        return PixelWalk.firstSetPoint(this.map, start, end);
     }
     public/***/ int[] findBoxPointOnPath(double[] start, double[] end) {
         return findBoxPointOnPath(Math2.toInt(start), Math2.toInt(end));
@@ -547,37 +649,36 @@ public class LabelLayoutIterator {
      * @pre start is a box-point in the map.
      */
     public/***/ Box expandToBox(int[] start) {
-        LinkedList<int[]> ps = expandToBoxPoints(start);
-        if (ps.size() < Box.MIN_NO_POINTS_FOR_BOX_FITTING
-            || containsEdgePoint(ps)) {
+        if (!isBoxPoint(start)) return null;
+
+        int id = this.components.getId(start[0], start[1]);
+        if (this.components.getSize(id) < Box.MIN_NO_POINTS_FOR_BOX_FITTING
+            || this.components.touchesEdge(id)) {
             return null;
         }
 
-        Box b = new Box(ps);
-        if (isInside(b)) return b;
-        else return null;
+        PointSet ps = PointSet.acquire();
+        try {
+            this.components.getPoints(id, ps);
+            Box b = new Box(ps);
+            if (isInside(b)) return b;
+            else return null;
+        }
+        finally {
+            PointSet.release(ps);
+        }
     }
 
     /**
      * @param start Start-point.
-     * @return All box-points connected to start (including start).
-     * Empty list if start not a box-point.
+     * @return All box-points connected to start (including start),
+     * row by row. Empty list if start not a box-point.
      */
     public/***/ LinkedList<int[]> expandToBoxPoints(int[] start) {
         if (!isBoxPoint(start)) return new LinkedList<int[]>();
 
-        LinkedList<int[]> open = new LinkedList<int[]>();
-        LinkedList<int[]> closed = new LinkedList<int[]>();
-        open.add(start);
-
-        while (open.size() > 0) {
-            int[] current = open.removeFirst();
-            LinkedList<int[]> ns = getBoxPointNeighbors(current);
-            LinkedList<int[]> uns = Math2.getUniquePoints(ns, open, closed);
-            open.addAll(uns);
-            closed.add(current);
-        }
-        return closed;
+        int id = this.components.getId(start[0], start[1]);
+        return this.components.getPoints(id);
     }
 
     /**
@@ -617,9 +718,9 @@ public class LabelLayoutIterator {
     public/***/ boolean isEdgePoint(int[] p) {
         return
             p[0] == 0 ||
-            p[0] == map[0].length-1 ||
+            p[0] == map.getWidth()-1 ||
             p[1] == 0 ||
-            p[1] == map.length-1;
+            p[1] == map.getHeight()-1;
     }
 
     /**
@@ -637,8 +738,8 @@ public class LabelLayoutIterator {
      */
     public/***/ boolean isInside(int[] p) {
         return
-            p[0] >= 0 && p[0] < map[0].length &&
-            p[1] >= 0 && p[1] < map.length;
+            p[0] >= 0 && p[0] < map.getWidth() &&
+            p[1] >= 0 && p[1] < map.getHeight();
     }
     public/***/ boolean isInside(double[] p) {
         return isInside(Math2.toInt(p));
@@ -648,10 +749,7 @@ public class LabelLayoutIterator {
      * @return True if [x,y] is a box-point.
      */
     public/***/ boolean isBoxPoint(int x, int y) {
-        if (y < 0 || y >= map.length) return false;
-        if (x < 0 || x >= map[0].length) return false;
-
-        return map[y][x];
+        return map.get(x, y);
     }
     public/***/ boolean isBoxPoint(int[] p) {
         return isBoxPoint(p[0], p[1]);
@@ -661,19 +759,14 @@ public class LabelLayoutIterator {
      * @return True if map is empty (all points false).
      */
     public/***/ boolean mapIsEmpty() {
-        for (boolean[] row : map) {
-            for (boolean p : row) {
-                if (p == true) return false;
-            }
-        }
-        return true;
+        return map.isEmpty();
     }
 
     /**
      * @return True if layout might continue outside of box-image.
      */
     public boolean isEdgeLabel(LabelLayout l) {
-        boolean[][] temp = this.map;
+        BitMap temp = this.map;
         this.map = this.untouchedMap;
         boolean res = isEdgeLabel_(l);
         this.map = temp;
@@ -767,12 +860,29 @@ public class LabelLayoutIterator {
 
     /**
      * Width and height of image sent to label-layout-iter.
-     * If too large, risk of heap-overflow. */
-    public/***/ static final int LABEL_LAYOUT_ANALYSIS_SIZE = 1000;
+     * If too large, risk of heap-overflow: per analysing thread, the
+     * maps take a few bits per pixel, and the component-labelling
+     * three ints per run and an int per set pixel. */
+    public/***/ static final int LABEL_LAYOUT_ANALYSIS_SIZE = 2000;
+
+    /**
+     * If true, analysis-windows are analysed concurrently (see
+     * Tasks). Otherwise one after the other. */
+    public static boolean CONCURRENT_ANALYSIS = true;
+
+    /**
+     * If true, getLayouts() analyses non-overlapping windows and then
+     * the seams between them, see getLayoutsStitched(). Otherwise
+     * windows overlap by the view's extension-term, and duplicates
+     * are removed afterwards. */
+    public static boolean SEAM_STITCHING = false;
 
     /**
      * Performs label-layout analysis for sub-images of a box-image.
      * Sub-image max-side-length is LABEL_LAYOUT_ANALYSIS_SIZE.
+     * Windows are analysed concurrently if CONCURRENT_ANALYSIS, but
+     * results are merged in window-order, so the returned list is
+     * the same either way.
      *
      * @param bimg Box-image.
      * @param v View describing bimg.
@@ -780,26 +890,266 @@ public class LabelLayoutIterator {
      * No duplicates (sufficiently similar).
      */
     public static LinkedList<LabelLayout> getLayouts(TiledImage bimg, MapImageView v) throws IOException {
+        if (SEAM_STITCHING) return getLayoutsStitched(bimg, v);
+
+        List<Callable<LinkedList<LabelLayout>>> tasks =
+            new ArrayList<Callable<LinkedList<LabelLayout>>>();
+        for (int[] bs : getAnalysisWindows(bimg.getWidth(), bimg.getHeight(), v)) {
+            tasks.add(newAnalysisTask(bimg, bs));
+        }
+
         LinkedList<LabelLayout> lays = new LinkedList<LabelLayout>();
+        for (LinkedList<LabelLayout> ls : runAll(tasks)) {
+            lays.addAll(ls);
+        }
+        return removeDuplicateLayouts(lays);
+    }
 
+    /**
+     * Performs label-layout analysis without overlapping windows.
+     *
+     * 1.The box-image is split in blocks with max-side-length
+     * LABEL_LAYOUT_ANALYSIS_SIZE. Labels inside a block are kept,
+     * and their box-points marked as consumed.
+     * 2.Labels that a block skipped for being at its edge, and
+     * components cut by its edge, are extended by the view's
+     * extension-term to seam-windows (merged where intersecting,
+     * see mergeIntersecting()).
+     * 3.Seam-windows are analysed with consumed box-points removed,
+     * so labels found in step 1 can't be found again. Seam-windows
+     * left unmerged might overlap, so duplicates among their labels
+     * are removed.
+     *
+     * Only pixels around labels at a seam are read twice. Labels
+     * reaching further than the extension-term past a block-edge are
+     * cut by their seam-window too, and not found (like by
+     * getLayouts() with overlapping windows). They are logged.
+     *
+     * @param bimg Box-image.
+     * @param v View describing bimg.
+     * @return All labels in bimg, using default alphaThreshold.
+     * Labels of blocks first, then labels at seams.
+     */
+    public static LinkedList<LabelLayout> getLayoutsStitched(TiledImage bimg, MapImageView v) throws IOException {
+        int w = bimg.getWidth();
+        int h = bimg.getHeight();
         int extTerm = v.getExtensionTerm();
-        int[] imgBs = new int[]{0, 0, bimg.getWidth()-1, bimg.getHeight()-1};
-        LinkedList<int[]> bss = Math2.split(imgBs, LABEL_LAYOUT_ANALYSIS_SIZE);
+
+        LinkedList<int[]> blocks = Math2.split(new int[]{0, 0, w-1, h-1}, LABEL_LAYOUT_ANALYSIS_SIZE);
+        List<Callable<Window>> tasks = new ArrayList<Callable<Window>>();
+        for (int[] bs : blocks) {
+            tasks.add(newWindowTask(bimg, bs, null));
+        }
+
+        LinkedList<LabelLayout> lays = new LinkedList<LabelLayout>();
+        BitMap consumed = new BitMap(w, h);
+        LinkedList<int[]> seams = new LinkedList<int[]>();
+
+        for (Window win : runAll(tasks)) {
+            lays.addAll(win.lays);
+            consumed.setAll(win.consumed, win.bs[0], win.bs[1]);
+
+            for (int[] fs : win.fragments) {
+                int[] ss = Math2.getInsideBounds(Math2.extendBounds(fs, extTerm), w, h);
+                if (!Math2.containsBounds(win.bs, ss)) seams.add(ss);
+            }
+        }
+
+        tasks.clear();
+        for (int[] bs : mergeIntersecting(seams, LABEL_LAYOUT_ANALYSIS_SIZE)) {
+            tasks.add(newWindowTask(bimg, bs, consumed));
+        }
+        LinkedList<LabelLayout> seamLays = new LinkedList<LabelLayout>();
+        int cut = 0;
+        for (Window win : runAll(tasks)) {
+            seamLays.addAll(win.lays);
+
+            for (int[] fs : win.fragments) {
+                int[] ss = Math2.getInsideBounds(Math2.extendBounds(fs, extTerm), w, h);
+                if (!Math2.containsBounds(win.bs, ss)) cut++;
+            }
+        }
+        if (cut > 0) LOGGER.fine(cut + " components cut by seam-windows, not analysed");
+
+        lays.addAll(removeDuplicateLayouts(seamLays));
+        return lays;
+    }
+
+    /**
+     * Result of analysing a window: layouts (positioned in box-image),
+     * box-points of layouts (positioned in window), and bounds of
+     * edge-fragments (positioned in box-image).
+     */
+    public/***/ static class Window {
+        public/***/ int[] bs;
+        public/***/ LinkedList<LabelLayout> lays = new LinkedList<LabelLayout>();
+        public/***/ BitMap consumed;
+        public/***/ LinkedList<int[]> fragments = new LinkedList<int[]>();
+    }
+
+    /**
+     * Analyses a window of a box-image.
+     *
+     * @param bs Window [xmin ymin xmax ymax], inside bimg.
+     * @param consumed Box-points (positioned in bimg) to ignore, or
+     * null.
+     */
+    public/***/ static Window analyseWindow(TiledImage bimg, int[] bs, BitMap consumed) throws IOException {
+        BitMap map = new BitMap(bimg, bs, DEFAULT_ALPHA_THRESHOLD);
+        if (consumed != null) map.clearAll(consumed, bs[0], bs[1]);
+
+        LabelLayoutIterator iter = new LabelLayoutIterator(map);
+        iter.setSource(bimg, bs);
+        iter.consumed = new BitMap(map.getWidth(), map.getHeight());
+        iter.edgeLabels = new LinkedList<int[]>();
+
+        Window win = new Window();
+        win.bs = bs;
+        LabelLayout lay;
+        while ((lay = iter.next()) != null) {
+            win.lays.add(lay.addOffset(bs[0], bs[1]));
+        }
+        win.consumed = iter.consumed;
+        for (int[] fs : iter.getEdgeFragments()) {
+            win.fragments.add(new int[]{ fs[0] + bs[0], fs[1] + bs[1],
+                                         fs[2] + bs[0], fs[3] + bs[1] });
+        }
+        return win;
+    }
+
+    /**
+     * Merges bounds into groups: a bounds joins a group if it
+     * intersects one of the group's bounds (not just the union of
+     * them), and the union stays within maxSide.
+     *
+     * @param maxSide Max width and height of a merged union. Bounds
+     * already larger are left as they are.
+     * @return Union of every group. Might intersect, where a merge
+     * would have grown past maxSide.
+     */
+    public/***/ static LinkedList<int[]> mergeIntersecting(LinkedList<int[]> bss, int maxSide) {
+        LinkedList<int[]> merged = new LinkedList<int[]>();
+        LinkedList<LinkedList<int[]>> members = new LinkedList<LinkedList<int[]>>();
 
         for (int[] bs : bss) {
-            bs = Math2.extendBounds(bs, extTerm);
-            BasicImage sub = bimg.getSubImage(bs);
-            bs = Math2.getInsideBounds(bs, sub.getWidth(), sub.getHeight());
-
-            LabelLayoutIterator iter = new LabelLayoutIterator(sub);
-            LabelLayout lay;
-            while ((lay = iter.next()) != null) {
-                lay = lay.addOffset(bs[0], bs[1]);
-                lays.add(lay);
+            LinkedList<int[]> ms = new LinkedList<int[]>();
+            ms.add(bs);
+
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                Iterator<int[]> it = merged.iterator();
+                Iterator<LinkedList<int[]>> mit = members.iterator();
+                while (it.hasNext()) {
+                    int[] m = it.next();
+                    LinkedList<int[]> mms = mit.next();
+                    int[] u = Math2.union(m, bs);
+
+                    if (u[2] - u[0] < maxSide && u[3] - u[1] < maxSide &&
+                        intersectsAny(ms, mms)) {
+                        bs = u;
+                        ms.addAll(mms);
+                        it.remove();
+                        mit.remove();
+                        grown = true;
+                    }
+                }
             }
+            merged.add(bs);
+            members.add(ms);
         }
+        return merged;
+    }
 
-        return removeDuplicateLayouts(lays);
+    /**
+     * @return True if any bounds in bss0 intersects any in bss1.
+     */
+    public/***/ static boolean intersectsAny(LinkedList<int[]> bss0, LinkedList<int[]> bss1) {
+        for (int[] b0 : bss0) {
+            for (int[] b1 : bss1) {
+                if (Math2.intersects(b0, b1)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs tasks, concurrently if CONCURRENT_ANALYSIS (see Tasks).
+     *
+     * @return Results, in order of tasks.
+     */
+    public/***/ static <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        return Tasks.runAll(tasks, CONCURRENT_ANALYSIS);
+    }
+
+    /**
+     * @return Task analysing one window of bimg.
+     */
+    public/***/ static Callable<LinkedList<LabelLayout>> newAnalysisTask(final TiledImage bimg, final int[] bs) {
+        return new Callable<LinkedList<LabelLayout>>() {
+            @Override
+            public LinkedList<LabelLayout> call() throws IOException {
+                return getLayouts(bimg, bs);
+            }
+        };
+    }
+
+    /**
+     * @return Task analysing one window of bimg, see analyseWindow().
+     */
+    public/***/ static Callable<Window> newWindowTask(final TiledImage bimg, final int[] bs, final BitMap consumed) {
+        return new Callable<Window>() {
+            @Override
+            public Window call() throws IOException {
+                return analyseWindow(bimg, bs, consumed);
+            }
+        };
+    }
+
+    /**
+     * Performs label-layout analysis for one sub-image of a box-image.
+     *
+     * @param bimg Box-image.
+     * @param bs Bounds of sub-image [xmin ymin xmax ymax]. If outside,
+     * snapped inside.
+     * @return All labels in sub-image, positioned in bimg, using
+     * default alphaThreshold. Might contain duplicates.
+     */
+    public static LinkedList<LabelLayout> getLayouts(TiledImage bimg, int[] bs) throws IOException {
+        LinkedList<LabelLayout> lays = new LinkedList<LabelLayout>();
+
+        bs = Math2.getInsideBounds(bs, bimg.getWidth(), bimg.getHeight());
+
+        LabelLayoutIterator iter = new LabelLayoutIterator(bimg, bs);
+        LabelLayout lay;
+        while ((lay = iter.next()) != null) {
+            lay = lay.addOffset(bs[0], bs[1]);
+            lays.add(lay);
+        }
+
+        return lays;
+    }
+
+    /**
+     * Splits a box-image in analysis-windows: blocks with max-side-
+     * length LABEL_LAYOUT_ANALYSIS_SIZE, extended by the view's
+     * extension-term (so labels cut by a block fit in a window).
+     *
+     * @param w Width of box-image.
+     * @param h Height of box-image.
+     * @param v View describing box-image.
+     * @return Window-bounds [xmin ymin xmax ymax], row by row. Might
+     * be outside of image.
+     */
+    public/***/ static LinkedList<int[]> getAnalysisWindows(int w, int h, MapImageView v) {
+        int extTerm = v.getExtensionTerm();
+        int[] imgBs = new int[]{0, 0, w-1, h-1};
+        LinkedList<int[]> bss = new LinkedList<int[]>();
+
+        for (int[] bs : Math2.split(imgBs, LABEL_LAYOUT_ANALYSIS_SIZE)) {
+            bss.add(Math2.extendBounds(bs, extTerm));
+        }
+        return bss;
     }
 
     /**
@@ -810,23 +1160,22 @@ public class LabelLayoutIterator {
      * @return List with no duplicates.
      */
     public/***/ static LinkedList<LabelLayout> removeDuplicateLayouts(LinkedList<LabelLayout> lays) {
-        LinkedList<LabelLayout> filtered = new LinkedList<LabelLayout>();
+        LayoutIndex filtered = new LayoutIndex();
         for (LabelLayout lay : lays) {
-            if (!lay.sameAsAny(filtered))
-                filtered.add(lay);
+            filtered.add(lay);
         }
 
-        return filtered;
+        return filtered.getLayouts();
     }
 
     //*********************************FOR TESTING
 
     public BasicImage toImg() {
-        BasicImage img = new BasicImage(map[0].length, map.length);
+        BasicImage img = new BasicImage(map.getWidth(), map.getHeight());
 
-        for (int y = 0; y < map.length; y++) {
-            for (int x = 0; x < map[y].length; x++) {
-                if (map[y][x])
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                if (map.get(x, y))
                     img.setColor(x, y, Color.BLACK);
             }
         }
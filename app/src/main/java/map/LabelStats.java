@@ -0,0 +1,101 @@
+package map;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Pixel-statistics of a label in a box-image: color-sums, number of
+ * pixels, bounds and a histogram of color-codes (see
+ * CategoryDecoder.colorCode()). Gathered by LabelLayoutIterator
+ * while detecting the label, so the category can be decoded without
+ * reading the box-image again.
+ */
+public class LabelStats {
+
+    /**
+     * Sums of red, green, blue over all pixels. */
+    public/***/ long r = 0, g = 0, b = 0;
+
+    /**
+     * Number of pixels. */
+    public/***/ int count = 0;
+
+    /**
+     * [xmin ymin xmax ymax] of pixels. */
+    public/***/ int[] bounds = new int[]{
+        Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+
+    /**
+     * Number of pixels of every color-code. */
+    public/***/ int[] histogram = new int[DecoderRegistry.NO_COLOR_CODES];
+
+    /**
+     * Adds pixel [x,y] with color argb.
+     */
+    public void add(int x, int y, int argb) {
+        int red = (argb >> 16) & 0xff;
+        int green = (argb >> 8) & 0xff;
+        int blue = argb & 0xff;
+        this.r += red;
+        this.g += green;
+        this.b += blue;
+        this.count++;
+        this.histogram[CategoryDecoder.colorCode(red, green, blue)]++;
+
+        if (x < this.bounds[0]) this.bounds[0] = x;
+        if (y < this.bounds[1]) this.bounds[1] = y;
+        if (x > this.bounds[2]) this.bounds[2] = x;
+        if (y > this.bounds[3]) this.bounds[3] = y;
+    }
+
+    /**
+     * @return Number of pixels.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return Average color of pixels (rounded per component).
+     */
+    public Color getAverageColor() {
+        double n = this.count;
+        return new Color(Math2.toInt(this.r / n),
+                         Math2.toInt(this.g / n),
+                         Math2.toInt(this.b / n));
+    }
+
+    /**
+     * @return [xmin ymin xmax ymax] of pixels.
+     */
+    public int[] getBounds() {
+        return this.bounds.clone();
+    }
+
+    /**
+     * @return Number of pixels of every color-code. Not a copy.
+     */
+    public int[] getHistogram() {
+        return this.histogram;
+    }
+
+    /**
+     * @return Copy with bounds moved by [dx,dy].
+     */
+    public LabelStats addOffset(int dx, int dy) {
+        LabelStats cpy = new LabelStats();
+        cpy.r = this.r;
+        cpy.g = this.g;
+        cpy.b = this.b;
+        cpy.count = this.count;
+        cpy.histogram = this.histogram.clone();
+        cpy.bounds = new int[]{ this.bounds[0] + dx, this.bounds[1] + dy,
+                                this.bounds[2] + dx, this.bounds[3] + dy };
+        return cpy;
+    }
+
+    @Override
+    public String toString() {
+        return "count: " + this.count + ", bounds: " + Arrays.toString(this.bounds);
+    }
+}
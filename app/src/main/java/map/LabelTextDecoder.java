@@ -1,13 +1,12 @@
 package map;
 
 import java.io.IOException;
-import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
-import com.google.gson.JsonParser;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.Gson;
 
 /**
  * Static class for decoding images of encoded label-text.
@@ -21,11 +20,6 @@ import com.google.gson.Gson;
  */
 public class LabelTextDecoder {
 
-    /**
-     * Mappings-array where index map to unicode-point. */
-    public/***/ static final String MAPPINGS_PATH = "codeFontMappings.json";
-    public/***/ static int[] mappings = null;
-
     /**
      * Layout of code-image. */
     public static final int CODE_BOX_ROWS = 4;
@@ -39,14 +33,25 @@ public class LabelTextDecoder {
 
     /**
      * Loads code-font-mappings-table used for converting decoded
-     * number into unicode character. Call before all else.
+     * number into unicode character, if not loaded (see
+     * DecoderRegistry).
      */
     public static void init() throws IOException {
-        JsonArray json = new JsonParser().parse(new FileReader(MAPPINGS_PATH)).getAsJsonArray();
+        DecoderRegistry.get();
+    }
 
-        mappings = new int[json.size()];
-        for (int i = 0; i < mappings.length; i++)
-            mappings[i] = json.get(i).getAsInt();
+    /**
+     * Block-mids, as fractions of box width/height, in bit-order:
+     * block i (row by row) is at [SAMPLE_X[i], SAMPLE_Y[i]]. */
+    public/***/ static final double[] SAMPLE_X = new double[CODE_BOX_ROWS * CODE_BOX_COLS];
+    public/***/ static final double[] SAMPLE_Y = new double[CODE_BOX_ROWS * CODE_BOX_COLS];
+    static {
+        for (int r = 0; r < CODE_BOX_ROWS; r++) {
+            for (int c = 0; c < CODE_BOX_COLS; c++) {
+                SAMPLE_X[r*CODE_BOX_COLS + c] = (c + 0.5) / CODE_BOX_COLS;
+                SAMPLE_Y[r*CODE_BOX_COLS + c] = (r + 0.5) / CODE_BOX_ROWS;
+            }
+        }
     }
 
     /**
@@ -55,28 +60,13 @@ public class LabelTextDecoder {
      * @return The character mapped by decoded integer.
      */
     public static char decode(Box b, TiledImage codeImg) throws UnknownCharacterException, IOException {
-        if (mappings == null)
-            throw new RuntimeException("Call init() !");
-
-        Box[] bs = b.split(CODE_BOX_ROWS, CODE_BOX_COLS);
-        String binary = "";
-
-        for (Box block : bs) {
-            int[] mid = Math2.toInt(block.getMid());
-
-            if (codeImg.getColor(mid).getAlpha() < ALPHA_THRESHOLD)
-                binary += "0";
-            else
-                binary += "1";
+        int[] ps = getSamplePoints(b, new int[2 * SAMPLE_X.length]);
+        int code = 0;
+        for (int i = 0; i < SAMPLE_X.length; i++) {
+            if (codeImg.getAlpha(ps[2*i], ps[2*i+1]) >= ALPHA_THRESHOLD)
+                code |= 1 << i;
         }
-
-        binary = new StringBuilder(binary).reverse().toString();
-        int index = Integer.parseInt(binary, 2);
-        if (index >= mappings.length)
-            throw new UnknownCharacterException("Bad code: " + index + ", caused by box: " + b);
-
-        int codePoint = mappings[index];
-        return new String(Character.toChars(codePoint)).charAt(0);
+        return toChar(code, b, DecoderRegistry.get());
     }
 
     /**
@@ -86,44 +76,251 @@ public class LabelTextDecoder {
      * per box in the layout.
      */
     public static String decode(LabelLayout lay, TiledImage codeImg) throws UnknownCharacterException, IOException {
-        String txt = "";
-        for (Box b : lay.getBoxesWithNewlines())
-            if (b == null) txt += " ";
-            else txt += decode(b, codeImg);
-        return txt;
+        DecoderRegistry reg = DecoderRegistry.get();
+        StringBuilder txt = new StringBuilder(lay.getNoBoxes() + lay.getNoRows());
+        int[] ps = new int[2 * SAMPLE_X.length];
+
+        for (LinkedList<Box> row : lay.letterBoxes) {
+            if (txt.length() > 0) txt.append(' ');
+            for (Box b : row) {
+                getSamplePoints(b, ps);
+                int code = 0;
+                for (int i = 0; i < SAMPLE_X.length; i++) {
+                    if (codeImg.getAlpha(ps[2*i], ps[2*i+1]) >= ALPHA_THRESHOLD)
+                        code |= 1 << i;
+                }
+                txt.append(toChar(code, b, reg));
+            }
+        }
+        return txt.toString();
     }
 
-    //--------------------------------------------testing
+    /**
+     * Finds the (rounded) mid-point of every block of the box's
+     * code-grid, stepping from top-left along the box's width- and
+     * height-vectors.
+     *
+     * @param dst Destination, length 2*(number of blocks).
+     * @return dst: [x0 y0 x1 y1 ...] in bit-order.
+     */
+    public/***/ static int[] getSamplePoints(Box b, int[] dst) {
+        double[] tl = b.getTopLeft();
+        double[] tr = b.getTopRight();
+        double wx = tr[0] - tl[0];
+        double wy = tr[1] - tl[1];
+        double f = b.getHeight() / Math.sqrt(wx*wx + wy*wy);
+        double hx = -wy * f;
+        double hy = wx * f;
 
+        for (int i = 0; i < SAMPLE_X.length; i++) {
+            dst[2*i] = Math.round((float) (tl[0] + wx*SAMPLE_X[i] + hx*SAMPLE_Y[i]));
+            dst[2*i+1] = Math.round((float) (tl[1] + wy*SAMPLE_X[i] + hy*SAMPLE_Y[i]));
+        }
+        return dst;
+    }
 
     /**
-     * @param b Specifies area of a letter.
-     * @param codeImg Image containing letter specified by b.
-     * @return The character mapped by decoded integer.
+     * @param code Decoded integer (index in mappings).
+     * @param b Box, for error-message.
+     * @param reg Registry with mappings.
+     * @return Mapped character (high surrogate if outside BMP).
      */
-    public static char decode(Box b, BasicImage codeImg) throws UnknownCharacterException, IOException {
-        if (mappings == null)
-            throw new RuntimeException("Call init() !");
+    public/***/ static char toChar(int code, Box b, DecoderRegistry reg) throws UnknownCharacterException {
+        if (code >= reg.getNoCodes())
+            throw new UnknownCharacterException("Bad code: " + code + ", caused by box: " + b);
+
+        int codePoint = reg.getCodePoint(code);
+        if (Character.isBmpCodePoint(codePoint)) return (char) codePoint;
+        return Character.highSurrogate(codePoint);
+    }
+
+    /**
+     * Decodes the text of many labels at once. Sample-points of all
+     * glyphs are found first, then read tile by tile, so every tile
+     * of the code-image is fetched once, whatever the order of the
+     * labels.
+     */
+    public static class Batch {
+
+        /**
+         * Layouts, and index of first glyph of layout i (glyphs
+         * row by row). start[lays.length] is number of glyphs. */
+        public/***/ final LabelLayout[] lays;
+        public/***/ final int[] start;
+
+        /**
+         * Sample-points [x y] of glyph g, block i, at
+         * points[2*(g*BLOCKS + i)]. */
+        public/***/ final int[] points;
+
+        /**
+         * Opaque (1) or not (0) per sample, -1 if outside image. */
+        public/***/ final byte[] bits;
 
-        Box[] bs = b.split(CODE_BOX_ROWS, CODE_BOX_COLS);
-        String binary = "";
+        /**
+         * Samples by tile: samples of tile t are
+         * order[tileStart[t]] ... order[tileStart[t+1]-1]. */
+        public/***/ int[] order;
+        public/***/ int[] tileStart;
 
-        for (Box block : bs) {
-            int[] mid = Math2.toInt(block.getMid());
+        /**
+         * Registry with mappings. */
+        public/***/ final DecoderRegistry registry;
 
-            if (codeImg.getColor(mid).getAlpha() < ALPHA_THRESHOLD)
-                binary += "0";
-            else
-                binary += "1";
+        /**
+         * @param lays Layouts to decode.
+         * @param reg Registry with mappings.
+         */
+        public Batch(List<LabelLayout> lays, DecoderRegistry reg) {
+            this.registry = reg;
+            this.lays = lays.toArray(new LabelLayout[lays.size()]);
+            this.start = new int[this.lays.length + 1];
+            for (int l = 0; l < this.lays.length; l++)
+                this.start[l+1] = this.start[l] + this.lays[l].getNoBoxes();
+
+            int n = SAMPLE_X.length;
+            this.points = new int[2 * n * this.start[this.lays.length]];
+            this.bits = new byte[n * this.start[this.lays.length]];
+
+            int[] ps = new int[2 * n];
+            int g = 0;
+            for (LabelLayout lay : this.lays) {
+                for (LinkedList<Box> row : lay.letterBoxes) {
+                    for (Box b : row) {
+                        getSamplePoints(b, ps);
+                        System.arraycopy(ps, 0, this.points, 2 * n * g++, 2 * n);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads all samples from codeImg, one tile at a time.
+         *
+         * @param concurrent If true, tiles are read concurrently (see
+         * Tasks.runAll()).
+         */
+        public void read(final TiledImage codeImg, boolean concurrent) throws IOException {
+            sortByTile(codeImg);
+
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int t = 0; t + 1 < this.tileStart.length; t++) {
+                if (this.tileStart[t] == this.tileStart[t+1]) continue;
+                final int t_ = t;
+                tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            readTile(codeImg, t_);
+                            return null;
+                        }
+                    });
+            }
+            Tasks.runAll(tasks, concurrent);
+        }
+
+        /**
+         * Orders samples by tile of img (counting sort). Samples
+         * outside img are marked -1 in bits.
+         */
+        public/***/ void sortByTile(TiledImage img) {
+            int tw = img.getTileWidth();
+            int th = img.getTileHeight();
+            int cols = (img.getWidth() + tw - 1) / tw;
+            int rows = (img.getHeight() + th - 1) / th;
+            int[] tile = new int[this.bits.length];
+            this.tileStart = new int[rows * cols + 1];
+
+            for (int s = 0; s < this.bits.length; s++) {
+                int x = this.points[2*s];
+                int y = this.points[2*s+1];
+                if (x < 0 || y < 0 || x >= img.getWidth() || y >= img.getHeight()) {
+                    this.bits[s] = -1;
+                    tile[s] = -1;
+                    continue;
+                }
+                tile[s] = (y / th) * cols + x / tw;
+                this.tileStart[tile[s] + 1]++;
+            }
+            for (int t = 0; t < rows * cols; t++)
+                this.tileStart[t+1] += this.tileStart[t];
+
+            this.order = new int[this.tileStart[rows * cols]];
+            int[] next = Arrays.copyOf(this.tileStart, rows * cols);
+            for (int s = 0; s < this.bits.length; s++) {
+                if (tile[s] >= 0) this.order[ next[tile[s]]++ ] = s;
+            }
+        }
+
+        /**
+         * Reads samples of tile t.
+         */
+        public/***/ void readTile(TiledImage img, int t) throws IOException {
+            int tw = img.getTileWidth();
+            int th = img.getTileHeight();
+            int cols = (img.getWidth() + tw - 1) / tw;
+            int r = t / cols;
+            int c = t % cols;
+            BasicImage tile = img.getTile(r, c);
+
+            for (int k = this.tileStart[t]; k < this.tileStart[t+1]; k++) {
+                int s = this.order[k];
+                int a = tile.getAlpha(this.points[2*s] - c*tw, this.points[2*s+1] - r*th);
+                this.bits[s] = (byte) (a >= ALPHA_THRESHOLD ? 1 : 0);
+            }
+        }
+
+        /**
+         * @return Number of layouts.
+         */
+        public int size() {
+            return this.lays.length;
         }
 
-        binary = new StringBuilder(binary).reverse().toString();
-        int index = Integer.parseInt(binary, 2);
-        if (index >= mappings.length)
-            throw new UnknownCharacterException("Bad code: " + index + ", caused by box: " + b);
+        /**
+         * @return Label-text of layout i. One char per box in the
+         * layout, rows separated by space.
+         * @pre read()
+         */
+        public String getText(int i) throws UnknownCharacterException {
+            LabelLayout lay = this.lays[i];
+            StringBuilder txt = new StringBuilder(lay.getNoBoxes() + lay.getNoRows());
+            int n = SAMPLE_X.length;
+            int g = this.start[i];
 
-        int codePoint = mappings[index];
-        return new String(Character.toChars(codePoint)).charAt(0);
+            for (LinkedList<Box> row : lay.letterBoxes) {
+                if (txt.length() > 0) txt.append(' ');
+                for (Box b : row) {
+                    int code = 0;
+                    for (int k = 0; k < n; k++) {
+                        byte bit = this.bits[g*n + k];
+                        if (bit < 0)
+                            throw new UnknownCharacterException("Outside code-image, caused by box: " + b);
+                        code |= bit << k;
+                    }
+                    txt.append(toChar(code, b, this.registry));
+                    g++;
+                }
+            }
+            return txt.toString();
+        }
+    }
+
+    //--------------------------------------------testing
+
+
+    /**
+     * @param b Specifies area of a letter.
+     * @param codeImg Image containing letter specified by b.
+     * @return The character mapped by decoded integer.
+     */
+    public static char decode(Box b, BasicImage codeImg) throws UnknownCharacterException, IOException {
+        int[] ps = getSamplePoints(b, new int[2 * SAMPLE_X.length]);
+        int code = 0;
+        for (int i = 0; i < SAMPLE_X.length; i++) {
+            if (codeImg.getAlpha(ps[2*i], ps[2*i+1]) >= ALPHA_THRESHOLD)
+                code |= 1 << i;
+        }
+        return toChar(code, b, DecoderRegistry.get());
     }
 
     /**
@@ -133,10 +330,11 @@ public class LabelTextDecoder {
      * per box in the layout.
      */
     public static String decode(LabelLayout lay, BasicImage codeImg) throws UnknownCharacterException, IOException {
-        String txt = "";
-        for (Box b : lay.getBoxesWithNewlines())
-            if (b == null) txt += " ";
-            else txt += decode(b, codeImg);
-        return txt;
+        StringBuilder txt = new StringBuilder(lay.getNoBoxes() + lay.getNoRows());
+        for (LinkedList<Box> row : lay.letterBoxes) {
+            if (txt.length() > 0) txt.append(' ');
+            for (Box b : row) txt.append(decode(b, codeImg));
+        }
+        return txt.toString();
     }
 }
@@ -0,0 +1,110 @@
+package map;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Set of label-layouts where no two are the same (see
+ * LabelLayout.same()), indexed on a uniform grid for near-constant
+ * lookup of a same layout.
+ *
+ * Layouts are put in the grid-cell of their top-left bound corner,
+ * with cell-side LabelLayout.SAME_DELTA. Two same layouts have
+ * corners at most SAME_DELTA apart, so only the 3x3 cells around a
+ * layout's cell need to be compared.
+ */
+public class LayoutIndex {
+
+    /**
+     * Layouts by cell-key (see key()). */
+    public/***/ HashMap<Long, LinkedList<LabelLayout>> cells = new HashMap<Long, LinkedList<LabelLayout>>();
+
+    /**
+     * Layouts in order added. */
+    public/***/ LinkedList<LabelLayout> lays = new LinkedList<LabelLayout>();
+
+    public LayoutIndex() {}
+
+    /**
+     * Constructs index of layouts, all unique.
+     */
+    public LayoutIndex(List<LabelLayout> lays) {
+        for (LabelLayout lay : lays) put(lay);
+    }
+
+    /**
+     * Adds layout if not same as any layout in index.
+     * @return True if added.
+     */
+    public boolean add(LabelLayout lay) {
+        if (containsSame(lay)) return false;
+        put(lay);
+        return true;
+    }
+
+    /**
+     * Adds layout without checking if same as any.
+     */
+    public/***/ void put(LabelLayout lay) {
+        double[] bs = lay.getBounds();
+        Long k = key(cell(bs[0]), cell(bs[1]));
+
+        LinkedList<LabelLayout> c = this.cells.get(k);
+        if (c == null) {
+            c = new LinkedList<LabelLayout>();
+            this.cells.put(k, c);
+        }
+        c.add(lay);
+        this.lays.add(lay);
+    }
+
+    /**
+     * @return True if lay is sufficiently similar to any layout in
+     * index, see LabelLayout.same().
+     */
+    public boolean containsSame(LabelLayout lay) {
+        double[] bs = lay.getBounds();
+        long cx = cell(bs[0]);
+        long cy = cell(bs[1]);
+
+        for (long y = cy-1; y <= cy+1; y++) {
+            for (long x = cx-1; x <= cx+1; x++) {
+                LinkedList<LabelLayout> c = this.cells.get(key(x, y));
+                if (c == null) continue;
+                for (LabelLayout l : c) {
+                    if (lay.same(l)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Layouts in order added.
+     */
+    public LinkedList<LabelLayout> getLayouts() {
+        return this.lays;
+    }
+
+    /**
+     * @return Number of layouts.
+     */
+    public int size() {
+        return this.lays.size();
+    }
+
+    /**
+     * @return Grid-cell of coordinate v.
+     */
+    public/***/ static long cell(double v) {
+        return (long) Math.floor(v / LabelLayout.SAME_DELTA);
+    }
+
+    /**
+     * @return Key of cell [x,y].
+     */
+    public/***/ static Long key(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+}
@@ -34,6 +34,11 @@ public class MapImage {
      * Requested view, which was expanded..for testing. */
     public/***/ MapImageView reqView;
 
+    /**
+     * If true, labels are detected and decoded while the images
+     * are still downloading (see MapRequest.fetch3(RowListener)). */
+    public static boolean PIPELINED = true;
+
     /**
      * Fetches map-images from internet (full image, and auxiliary-
      * images used for analysis) and finds map-objects in them
@@ -49,8 +54,22 @@ public class MapImage {
         MapImageView imgView = v.getExtendedView();
         Path p = Paths.get("zoom_level_" + v.zoom);
         MapRequest req = new MapRequest(imgView, p, lang);
-        TiledImage[] imgs = req.fetch3();
-        MapObjects mobs = new MapObjects(imgs[1], imgs[2], imgView);
+        req.keepInMemory("code", "box");
+        TiledImage[] imgs;
+        MapObjects mobs;
+
+        if (PIPELINED) {
+            StreamingAnalysis sa = new StreamingAnalysis(imgView, req.getImageWidth(), req.getImageHeight());
+            imgs = req.fetch3(sa);
+            mobs = sa.getObjects();
+        }
+        else {
+            imgs = req.fetch3();
+            if (req.getLayouts() != null)
+                mobs = new MapObjects(req.getLayouts(), imgs[1], imgs[2]);
+            else
+                mobs = new MapObjects(imgs[1], imgs[2], imgView);
+        }
         // imgs[1].delete();
         // imgs[2].delete();
 
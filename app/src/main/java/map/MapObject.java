@@ -19,6 +19,11 @@ public class MapObject {
     public/***/ Category category;
     public/***/ LinkedList<LabelLayout> layouts = new LinkedList<LabelLayout>();
 
+    /**
+     * Index of layouts, for uniqueness-checks. Built when first
+     * needed. */
+    public/***/ LayoutIndex index = null;
+
     /**
      * Constructs a one-layout map-object from a label.
      */
@@ -42,7 +47,9 @@ public class MapObject {
      * @return True if lay added (is unique).
      */
     public boolean addLayout(LabelLayout lay) {
-        if (!lay.sameAsAny(this.layouts)) {
+        if (this.index == null) this.index = new LayoutIndex(this.layouts);
+
+        if (this.index.add(lay)) {
             this.layouts.add(lay);
             return true;
         }
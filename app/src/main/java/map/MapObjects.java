@@ -1,9 +1,15 @@
 package map;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
 import static loca.Utils.*;
 import java.util.logging.Level;
 
@@ -15,7 +21,12 @@ import java.util.logging.Level;
  */
 public class MapObjects implements Iterable<MapObject> {
 
-    public/***/ List<MapObject> mobs = new LinkedList<MapObject>();
+    public/***/ List<MapObject> mobs = new ArrayList<MapObject>();
+
+    /**
+     * If true, labels are decoded concurrently, one task per code-
+     * image-tile (see Tasks). */
+    public static boolean CONCURRENT_DECODING = true;
 
     /**
      * Constructs by extracting labels from code-image and box-image,
@@ -26,11 +37,34 @@ public class MapObjects implements Iterable<MapObject> {
      * @param view Describing cimg and bimg.
      */
     public MapObjects(TiledImage cimg, TiledImage bimg, MapImageView view) throws IOException {
-        LabelTextDecoder.init();
-        CategoryDecoder.init();
+        this(cimg, bimg, view, DecoderRegistry.get());
+    }
 
+    /**
+     * @param reg Registry used for decoding labels.
+     */
+    public MapObjects(TiledImage cimg, TiledImage bimg, MapImageView view, DecoderRegistry reg) throws IOException {
         List<LabelLayout> lays = LabelLayoutIterator.getLayouts(bimg, view);
-        List<Label> labs = getLabels(lays, cimg, bimg);
+        List<Label> labs = getLabels(lays, cimg, bimg, reg);
+        this.mobs = mergeLabels(labs);
+    }
+
+    /**
+     * Constructs from label-layouts already found in box-image.
+     *
+     * @param lays Label-layouts in bimg, all unique.
+     * @param cimg Code-image.
+     * @param bimg Box-image.
+     */
+    public MapObjects(List<LabelLayout> lays, TiledImage cimg, TiledImage bimg) throws IOException {
+        this(lays, cimg, bimg, DecoderRegistry.get());
+    }
+
+    /**
+     * @param reg Registry used for decoding labels.
+     */
+    public MapObjects(List<LabelLayout> lays, TiledImage cimg, TiledImage bimg, DecoderRegistry reg) throws IOException {
+        List<Label> labs = getLabels(lays, cimg, bimg, reg);
         this.mobs = mergeLabels(labs);
     }
 
@@ -45,32 +79,89 @@ public class MapObjects implements Iterable<MapObject> {
      * Turns label-layouts into labels. If fails to get label from
      * layout (junk etc), log and continue with next layout.
      *
+     * Texts are decoded in one batch (see LabelTextDecoder.Batch),
+     * reading each code-image-tile once. Categories are then decoded
+     * with layouts grouped by the box-image-tile of their mid-point.
+     * Tiles and groups are handled concurrently if
+     * CONCURRENT_DECODING.
+     *
      * @param lays Label-layouts, all unique.
      * @param cimg Code-image.
      * @param bimg Box-image.
-     * @return Corresponding labels. All with unique layouts.
+     * @param reg Registry used for decoding.
+     * @return Corresponding labels, in order of lays. All with unique
+     * layouts.
      */
-    public/***/ List<Label> getLabels(List<LabelLayout> lays, TiledImage cimg, TiledImage bimg) throws IOException {
-        List<Label> labs = new LinkedList<Label>();
-
-        for (LabelLayout lay : lays) {
-            try {
-                labs.add(new Label(lay, cimg, bimg));
-            }
-            catch (UnknownCharacterException e) {
-                LOGGER.info(e.toString());
-            }
-            catch (UnknownCategoryException e) {
-                LOGGER.info(e.toString());
-            }
-            catch (Label.JunkException e) {
-                LOGGER.info(e.toString());
-            }
+    public/***/ static List<Label> getLabels(List<LabelLayout> lays, TiledImage cimg, TiledImage bimg, DecoderRegistry reg) throws IOException {
+        final LabelTextDecoder.Batch batch = new LabelTextDecoder.Batch(lays, reg);
+        batch.read(cimg, CONCURRENT_DECODING);
+
+        final Label[] labArr = new Label[batch.size()];
+        final TiledImage bimg_ = bimg;
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final LinkedList<Integer> is : groupByTile(batch.lays, bimg)) {
+            tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        for (int i : is) labArr[i] = getLabel(batch, i, bimg_);
+                        return null;
+                    }
+                });
         }
+        Tasks.runAll(tasks, CONCURRENT_DECODING);
 
+        List<Label> labs = new ArrayList<Label>(labArr.length);
+        for (Label lab : labArr) {
+            if (lab != null) labs.add(lab);
+        }
         return labs;
     }
 
+    /**
+     * @return Label of layout i in batch, or NULL (logged) if layout
+     * can't be decoded.
+     * @pre batch read.
+     */
+    public/***/ static Label getLabel(LabelTextDecoder.Batch batch, int i, TiledImage bimg) throws IOException {
+        try {
+            return new Label(batch.lays[i], batch.getText(i), bimg, batch.registry);
+        }
+        catch (UnknownCharacterException e) {
+            LOGGER.info(e.toString());
+        }
+        catch (UnknownCategoryException e) {
+            LOGGER.info(e.toString());
+        }
+        catch (Label.JunkException e) {
+            LOGGER.info(e.toString());
+        }
+        return null;
+    }
+
+    /**
+     * @return Indexes of layouts, grouped by the tile of img that
+     * contains their mid-point.
+     */
+    public/***/ static Collection<LinkedList<Integer>> groupByTile(LabelLayout[] lays, TiledImage img) {
+        LinkedHashMap<Long, LinkedList<Integer>> groups = new LinkedHashMap<Long, LinkedList<Integer>>();
+
+        for (int i = 0; i < lays.length; i++) {
+            double[] mid = lays[i].getMid();
+            long r = (long) Math.floor(mid[1] / img.getTileHeight());
+            long c = (long) Math.floor(mid[0] / img.getTileWidth());
+            Long key = (r << 32) ^ (c & 0xffffffffL);
+
+            LinkedList<Integer> g = groups.get(key);
+            if (g == null) {
+                g = new LinkedList<Integer>();
+                groups.put(key, g);
+            }
+            g.add(i);
+        }
+        return groups.values();
+    }
+
     /**
      * Turn list of labels into list of map-objects. Labels describing
      * same feature (i.e same label-text and label-category) are
@@ -79,13 +170,19 @@ public class MapObjects implements Iterable<MapObject> {
      * @param labs List of labels. Has unique layouts.
      * @return List of map-objects. All layouts unique.
      */
-    public/***/ List<MapObject> mergeLabels(List<Label> labs) {
-        List<MapObject> mobs = new LinkedList<MapObject>();
+    public/***/ static List<MapObject> mergeLabels(List<Label> labs) {
+        List<MapObject> mobs = new ArrayList<MapObject>();
+        EnumMap<Category, HashMap<String, MapObject>> index =
+            new EnumMap<Category, HashMap<String, MapObject>>(Category.class);
 
         for (Label lab : labs) {
-            MapObject mob = findCorrespondingMapObject(lab, mobs);
+            MapObject mob = findCorrespondingMapObject(lab, index);
 
-            if (mob == null) mobs.add(new MapObject(lab));
+            if (mob == null) {
+                mob = new MapObject(lab);
+                mobs.add(mob);
+                index.get(lab.getCategory()).put(lab.getText(), mob);
+            }
             else mob.addLayout(lab.getLayout());
         }
 
@@ -93,21 +190,25 @@ public class MapObjects implements Iterable<MapObject> {
     }
 
     /**
+     * @param index Map-objects by category and name.
      * @return Map-object where lab.text=mob.name and lab.category=
-     * mob.category, or NULL if none in list.
+     * mob.category, or NULL if none in index. Adds an empty map for
+     * lab's category to index, if none.
      */
-    public/***/ MapObject findCorrespondingMapObject(Label lab, List<MapObject> mobs) {
-        for (MapObject mob : mobs) {
-            if (mob.correspondsTo(lab)) return mob;
+    public/***/ static MapObject findCorrespondingMapObject(Label lab, EnumMap<Category, HashMap<String, MapObject>> index) {
+        HashMap<String, MapObject> byName = index.get(lab.getCategory());
+        if (byName == null) {
+            byName = new HashMap<String, MapObject>();
+            index.put(lab.getCategory(), byName);
         }
-        return null;
+        return byName.get(lab.getText());
     }
 
     /**
      * @return A deep copy.
      */
     public MapObjects copy() {
-        List<MapObject> mobsCpy = new LinkedList<MapObject>();
+        List<MapObject> mobsCpy = new ArrayList<MapObject>(this.mobs.size());
         for (MapObject mob : this.mobs) {
             mobsCpy.add(mob.copy());
         }
@@ -127,7 +228,7 @@ public class MapObjects implements Iterable<MapObject> {
      * @param bs [xmin ymin xmax ymax] in pixels.
      */
     public void filter(double[] bs) {
-        List<MapObject> filtered = new LinkedList<MapObject>();
+        List<MapObject> filtered = new ArrayList<MapObject>(this.mobs.size());
 
         for (MapObject mo : this.mobs) {
             MapObject mo_ = mo.filter(bs);
@@ -141,7 +242,7 @@ public class MapObjects implements Iterable<MapObject> {
      * Removes objects outside shape. Might remove all objects.
      */
     public void filter(Shape sh, MapImageView v) {
-        List<MapObject> filtered = new LinkedList<MapObject>();
+        List<MapObject> filtered = new ArrayList<MapObject>(this.mobs.size());
 
         for (MapObject mo : this.mobs) {
             MapObject mo_ = mo.filter(sh, v);
@@ -1,17 +1,25 @@
 package map;
 
-import com.mapbox.services.api.staticimage.v1.MapboxStaticImage;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.net.URL;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import static loca.Utils.*;
 
 /**
- * Fetch map images from mapbox server.
+ * Fetch map images from mapbox server (or any other tile-source).
  */
 public class MapRequest {
     public/***/ static final String USER_NAME = "masel";
@@ -42,6 +50,48 @@ public class MapRequest {
      * @inv this <= IMAGE_REQUEST_SIZE_LIMIT */
     public static final int REQUEST_SIZE = 512;
 
+    /**
+     * If true, sub-images are downloaded concurrently by a pool of
+     * worker-threads. Otherwise one after the other. */
+    public static boolean CONCURRENT_FETCH = true;
+
+    /**
+     * Number of worker-threads when fetching concurrently. */
+    public static int FETCH_THREADS = 16;
+
+    /**
+     * If true, fetch3() fetches the box-image first, and then only
+     * the code-image-tiles that contain labels. Other code-tiles are
+     * left blank (transparent). fetch3(RowListener) fetches the
+     * code-tiles near box-points instead, since it decodes labels
+     * before the whole box-image has arrived. */
+    public static boolean SPARSE_CODE_FETCH = true;
+
+    /**
+     * Images (subdir-names) built with memory-resident tiles instead
+     * of png-files, by default (see keepInMemory()). Empty, since
+     * images kept in memory can't be loaded from saveDir later. */
+    public static String[] IN_MEMORY_IMAGES = new String[0];
+
+    /**
+     * Max bytes of memory-resident tiles per image. Tiles beyond are
+     * saved to hdd. */
+    public static long TILE_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    /**
+     * Max size of the response-cache, in bytes. */
+    public static final long CACHE_SIZE = 2L * 1024 * 1024 * 1024;
+
+    /**
+     * Cache of fetched images, shared by all requests (and all
+     * processes using the same working-dir). NULL disables caching. */
+    public static ResponseCache CACHE = new ResponseCache("response_cache", CACHE_SIZE);
+
+    /**
+     * Source of all fetched images. Replace with a replay-source or
+     * a stand-in-server-source to run without mapbox servers. */
+    public static TileSource SOURCE = new MapboxTileSource();
+
     /** Mid-point. */
     public/***/ double lon,lat;
 
@@ -64,6 +114,15 @@ public class MapRequest {
     /** Language of labels returned by fetch3(). */
     public/***/ Language lang;
 
+    /** View the request was constructed from, or NULL. */
+    public/***/ MapImageView view;
+
+    /** Label-layouts found in box-image by last sparse fetch3(),
+     * or NULL. */
+    public/***/ List<LabelLayout> layouts;
+
+    /** Images (subdir-names) built with memory-resident tiles. */
+    public/***/ String[] inMemory = IN_MEMORY_IMAGES;
 
     /**
      * Constructs the request from a defined map-image-view.
@@ -79,6 +138,7 @@ public class MapRequest {
         this.zoom = v.zoom;
         this.saveDir = saveDir;
         this.lang = lang;
+        this.view = v;
 
         this.x2 = false;
         this.width = v.width;
@@ -93,32 +153,282 @@ public class MapRequest {
         this(v, Paths.get(saveDir), lang);
     }
 
+    /**
+     * Constructs a request from known parameters, without save-dir
+     * and language (so only fetchRaw() may be used).
+     *
+     * @param w Width in default pixel-density.
+     * @param h Height in default pixel-density.
+     */
+    public/***/ MapRequest(double lon, double lat, int w, int h, int z, boolean x2) {
+        this.lon = lon;
+        this.lat = lat;
+        this.width = w;
+        this.height = h;
+        this.zoom = z;
+        this.x2 = x2;
+    }
+
     /**
      * @return [mapImage, codeImage, boxImage]
      * @throws IOException if failed to fetch image (bad internet-conn?)
      */
     public TiledImage[] fetch3() throws IOException {
-        String fullID = "";
-        String codeID = "";
-        String boxID = "";
+        String[] ids = getStyleIDs();
+        String fullID = ids[0];
+        String codeID = ids[1];
+        String boxID = ids[2];
+
+        if (SPARSE_CODE_FETCH && this.view != null) {
+            return fetch3Sparse(ids);
+        }
+
+        if (!CONCURRENT_FETCH) {
+            return new TiledImage[] {
+                fetch(fullID, "full"),
+                fetch(codeID, "code"),
+                fetch(boxID, "box") };
+        }
+
+        MapRequest[][] reqs = this.split();
+        ExecutorService pool = newFetchPool();
+        try {
+            List<Future<BasicImage>> full = submit(pool, reqs, fullID);
+            List<Future<BasicImage>> code = submit(pool, reqs, codeID);
+            List<Future<BasicImage>> box = submit(pool, reqs, boxID);
+
+            return new TiledImage[] {
+                collect(full, reqs, "full"),
+                collect(code, reqs, "code"),
+                collect(box, reqs, "box") };
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Fetches the three images in two phases: first box- (and full-)
+     * image, then code-image-tiles only where the box-image has
+     * labels. Since the code-image is only sampled inside label-
+     * boxes, the skipped (transparent) tiles make no difference.
+     * Found layouts are kept, see getLayouts().
+     *
+     * @param ids [full, code, box] style IDs.
+     * @return [mapImage, codeImage, boxImage]
+     * @throws IOException if failed to fetch image (bad internet-conn?)
+     */
+    public/***/ TiledImage[] fetch3Sparse(String[] ids) throws IOException {
+        MapRequest[][] reqs = this.split();
+
+        ExecutorService pool = newFetchPool(CONCURRENT_FETCH ? FETCH_THREADS : 1);
+        try {
+            List<Future<BasicImage>> box = submit(pool, reqs, ids[2]);
+            List<Future<BasicImage>> full = submit(pool, reqs, ids[0]);
+            TiledImage bimg = collect(box, reqs, "box");
 
+            this.layouts = LabelLayoutIterator.getLayouts(bimg, this.view);
+            boolean[][] need = getLabelTiles(this.layouts, bimg);
+            List<Future<BasicImage>> code = submit(pool, reqs, ids[1], need);
+            TiledImage cimg = collect(code, reqs, "code");
+
+            return new TiledImage[] { collect(full, reqs, "full"), cimg, bimg };
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Label-layouts found in box-image by last fetch3(), if
+     * fetched sparsely (so needn't search again), otherwise NULL.
+     */
+    public List<LabelLayout> getLayouts() {
+        return this.layouts;
+    }
+
+    /**
+     * @param lays Label-layouts in img.
+     * @param img Tiled-image.
+     * @return [r][c] true for tiles of img that (partly) contain
+     * bounds of any label.
+     */
+    public/***/ static boolean[][] getLabelTiles(List<LabelLayout> lays, TiledImage img) {
+        boolean[][] need = new boolean[img.rows][img.cols];
+        int n = 0;
+
+        for (LabelLayout lay : lays) {
+            int[] bs = Math2.toIntBounds(lay.getBounds());
+            bs = Math2.getInsideBounds(bs, img.getWidth(), img.getHeight());
+            int[] tl = img.getTileAndPos(new int[]{bs[0], bs[1]});
+            int[] br = img.getTileAndPos(new int[]{bs[2], bs[3]});
+
+            for (int r = tl[0]; r <= br[0]; r++) {
+                for (int c = tl[1]; c <= br[1]; c++) {
+                    if (!need[r][c]) n++;
+                    need[r][c] = true;
+                }
+            }
+        }
+
+        LOGGER.fine(String.format("Labels in %s of %s tiles", n, img.rows * img.cols));
+        return need;
+    }
+
+    /**
+     * Fetches the three images like fetch3(), but lets a listener
+     * work on code- and box-image while the rest is downloading.
+     * Box-tiles are requested first, and every time a whole row of
+     * both code and box has arrived, the listener is handed the rows
+     * fetched so far. Full-image-tiles download meanwhile.
+     *
+     * If SPARSE_CODE_FETCH, code-tiles of row r are requested once
+     * box-rows r-1..r+1 have arrived, and only where the tile or a
+     * neighbor has box-points (see getBoxTiles()). Labels are smaller
+     * than a tile, so no label is missed. Otherwise code-tiles are
+     * requested along with box-tiles.
+     *
+     * @param l Listener, called once per tile-row, from this thread.
+     * @return [mapImage, codeImage, boxImage]
+     * @throws IOException if failed to fetch image (bad internet-conn?),
+     * or if thrown by l.
+     */
+    public TiledImage[] fetch3(RowListener l) throws IOException {
+        String[] ids = getStyleIDs();
+        MapRequest[][] reqs = this.split();
+        int rows = reqs.length;
+        int cols = reqs[0].length;
+        boolean sparse = SPARSE_CODE_FETCH;
+
+        ExecutorService pool = newFetchPool(CONCURRENT_FETCH ? FETCH_THREADS : 1);
+        try {
+            List<Future<BasicImage>> code = new ArrayList<Future<BasicImage>>();
+            List<Future<BasicImage>> box = new ArrayList<Future<BasicImage>>();
+            for (int r = 0; r < rows; r++) {
+                if (!sparse) code.addAll(submit(pool, new MapRequest[][]{reqs[r]}, ids[1]));
+                box.addAll(submit(pool, new MapRequest[][]{reqs[r]}, ids[2]));
+            }
+            List<Future<BasicImage>> full = submit(pool, reqs, ids[0]);
+
+            TiledImage.Builder cb = newBuilder(rows, cols, "code");
+            TiledImage.Builder bb = newBuilder(rows, cols, "box");
+            BasicImage[][] boxTiles = new BasicImage[rows][cols];
+            boolean[][] hasBoxes = new boolean[rows][cols];
+
+            for (int r = 0; r < rows; r++) {
+                // box-rows up to r+1 needed to choose code-tiles of r
+                int next = sparse ? Math.min(r+1, rows-1) : r;
+                for (int rb = r; rb <= next; rb++) {
+                    if (boxTiles[rb][0] != null) continue;
+                    for (int c = 0; c < cols; c++) {
+                        boxTiles[rb][c] = await(box.get(rb*cols + c));
+                        hasBoxes[rb][c] = hasBoxPoints(boxTiles[rb][c]);
+                    }
+                }
+
+                if (sparse) {
+                    boolean[][] need = new boolean[][]{ getBoxTiles(hasBoxes, r) };
+                    List<Future<BasicImage>> fs = submit(pool, new MapRequest[][]{reqs[r]}, ids[1], need);
+                    for (int c = 0; c < cols; c++) {
+                        if (fs.get(c) != null) cb.add(await(fs.get(c)));
+                        else cb.skip(reqs[r][c].getImageWidth(), reqs[r][c].getImageHeight());
+                    }
+                }
+                else {
+                    for (int c = 0; c < cols; c++) cb.add(await(code.get(r*cols + c)));
+                }
+
+                for (int c = 0; c < cols; c++) bb.add(boxTiles[r][c]);
+                boxTiles[r] = null;
+                l.rowsFetched(cb.buildPartial(), bb.buildPartial());
+            }
+
+            TiledImage cimg = cb.build();
+            TiledImage bimg = bb.build();
+            return new TiledImage[] { collect(full, reqs, "full"), cimg, bimg };
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param hasBoxes [r][c] true for box-tiles with box-points.
+     * @param r Row.
+     * @return [c] true for tiles of row r that have box-points, or
+     * a neighbor (also diagonal) that has.
+     */
+    public/***/ static boolean[] getBoxTiles(boolean[][] hasBoxes, int r) {
+        int rows = hasBoxes.length;
+        int cols = hasBoxes[0].length;
+        boolean[] need = new boolean[cols];
+
+        for (int c = 0; c < cols; c++) {
+            for (int nr = Math.max(r-1, 0); nr <= Math.min(r+1, rows-1); nr++) {
+                for (int nc = Math.max(c-1, 0); nc <= Math.min(c+1, cols-1); nc++) {
+                    if (hasBoxes[nr][nc]) need[c] = true;
+                }
+            }
+        }
+        return need;
+    }
+
+    /**
+     * @return True if tile of a box-image has any box-point (see
+     * LabelLayoutIterator.DEFAULT_ALPHA_THRESHOLD).
+     */
+    public/***/ static boolean hasBoxPoints(BasicImage tile) {
+        int[] alphas = new int[tile.getWidth()];
+        for (int y = 0; y < tile.getHeight(); y++) {
+            tile.getAlphaRow(y, alphas, 0);
+            for (int a : alphas) {
+                if (a >= LabelLayoutIterator.DEFAULT_ALPHA_THRESHOLD) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Listener of fetch-progress, see fetch3(RowListener).
+     */
+    public static interface RowListener {
+
+        /**
+         * Called when one more tile-row of both code- and box-image
+         * has been fetched.
+         *
+         * @param cimg Code-image made up of all rows fetched so far.
+         * @param bimg Box-image made up of all rows fetched so far.
+         */
+        void rowsFetched(TiledImage cimg, TiledImage bimg) throws IOException;
+    }
+
+    /**
+     * @return [full, code, box] style IDs for the language.
+     */
+    public/***/ String[] getStyleIDs() {
         switch (this.lang) {
         case EN:
-            fullID = FULL_STYLE_ID_EN;
-            codeID = CODE_STYLE_ID_EN;
-            boxID = BOX_STYLE_ID_EN;
-            break;
+            return new String[]{ FULL_STYLE_ID_EN, CODE_STYLE_ID_EN, BOX_STYLE_ID_EN };
         case LOCAL:
-            fullID = FULL_STYLE_ID_LOCAL;
-            codeID = CODE_STYLE_ID_LOCAL;
-            boxID = BOX_STYLE_ID_LOCAL;
-            break;
+            return new String[]{ FULL_STYLE_ID_LOCAL, CODE_STYLE_ID_LOCAL, BOX_STYLE_ID_LOCAL };
+        default:
+            throw new IllegalArgumentException("No styles for " + this.lang);
         }
+    }
 
-        return new TiledImage[] {
-            fetch(fullID, "full"),
-            fetch(codeID, "code"),
-            fetch(boxID, "box") };
+    /**
+     * @return Width in pixels of fetched image, with pixel-density.
+     */
+    public int getImageWidth() {
+        return this.x2 ? this.width * 2 : this.width;
+    }
+
+    /**
+     * @return Height in pixels of fetched image, with pixel-density.
+     */
+    public int getImageHeight() {
+        return this.x2 ? this.height * 2 : this.height;
     }
 
     /**
@@ -132,11 +442,20 @@ public class MapRequest {
      */
     public TiledImage fetch(String style, String subdir) throws IOException {
         MapRequest[][] reqs = this.split();
-        Path dir = this.saveDir.resolve(subdir);
+
+        if (CONCURRENT_FETCH) {
+            ExecutorService pool = newFetchPool();
+            try {
+                return collect(submit(pool, reqs, style), reqs, subdir);
+            }
+            finally {
+                pool.shutdownNow();
+            }
+        }
 
         int rows = reqs.length;
         int cols = reqs[0].length;
-        TiledImage.Builder builder = new TiledImage.Builder(rows, cols, dir);
+        TiledImage.Builder builder = newBuilder(rows, cols, subdir);
 
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
@@ -149,7 +468,10 @@ public class MapRequest {
     }
 
     /**
-     * Fetches an image from mapbox servers.
+     * Fetches an image from the tile-source, or from the response-
+     * cache if the same image has been fetched before. Responses
+     * are cached only if they decode, and an unreadable cached
+     * response is removed and fetched again.
      *
      * @param style Mapbox style ID.
      * @return A map image defined by this object and the style.
@@ -163,32 +485,171 @@ public class MapRequest {
             throw new RuntimeException("Requested dims too big");
         }
 
-        MapboxStaticImage staticImage = new MapboxStaticImage.Builder()
-            .setAccessToken(TOKEN)
-            .setUsername(USER_NAME)
-            .setStyleId(style)
-            .setLon(this.lon).setLat(this.lat)
-            .setZoom(this.zoom)
-            .setWidth(this.width).setHeight(this.height)
-            .setRetina(this.x2)
-            .build();
+        TileSource source = SOURCE;
+        ResponseCache cache = CACHE;
+        if (cache == null || DISABLE_STYLE_CACHING)
+            return decode(source.fetch(this, style));
+
+        String key = ResponseCache.key(this, style, source.getId());
+        byte[] data = cache.get(key);
+        if (data != null) {
+            try {
+                return decode(data);
+            }
+            catch (IOException e) {
+                LOGGER.warning("Unreadable cached image, fetching again: " + this);
+                cache.remove(key);
+            }
+        }
+
+        // only readable responses are cached
+        data = source.fetch(this, style);
+        BasicImage img = decode(data);
+        cache.put(key, data);
+        return img;
+    }
+
+    /**
+     * @param data Encoded image.
+     * @return Decoded image.
+     * @throws IOException if data isn't a readable image.
+     */
+    public/***/ static BasicImage decode(byte[] data) throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
+        if (img == null) throw new IOException("Unreadable image");
+        return new BasicImage(img);
+    }
+
+    /**
+     * Submits fetching of every sub-request to a pool.
+     *
+     * @param pool Worker-pool.
+     * @param reqs Sub-requests, as returned by split().
+     * @param style Mapbox style ID.
+     * @return Pending sub-images, left-to-right, row-by-row.
+     */
+    public/***/ static List<Future<BasicImage>> submit(ExecutorService pool, MapRequest[][] reqs, String style) {
+        return submit(pool, reqs, style, null);
+    }
+
+    /**
+     * Submits fetching of needed sub-requests to a pool.
+     *
+     * @param need [r][c] true if reqs[r][c] should be fetched. NULL
+     * if all.
+     * @return Pending sub-images, left-to-right, row-by-row. NULL
+     * for sub-images not needed.
+     */
+    public/***/ static List<Future<BasicImage>> submit(ExecutorService pool, MapRequest[][] reqs, final String style, boolean[][] need) {
+        List<Future<BasicImage>> fs = new ArrayList<Future<BasicImage>>();
+
+        for (int r = 0; r < reqs.length; r++) {
+            for (int c = 0; c < reqs[r].length; c++) {
+                final MapRequest req = reqs[r][c];
+                if (need != null && !need[r][c]) {
+                    fs.add(null);
+                    continue;
+                }
+
+                fs.add(pool.submit(new Callable<BasicImage>() {
+                        @Override
+                        public BasicImage call() throws IOException {
+                            return req.fetchRaw(style);
+                        }
+                    }));
+            }
+        }
+        return fs;
+    }
+
+    /**
+     * Waits for pending sub-images and builds a tiled-image of them,
+     * in the order they were submitted.
+     *
+     * @param fs Pending sub-images, left-to-right, row-by-row. NULL
+     * for sub-images not fetched, left blank.
+     * @param reqs Sub-requests the sub-images were submitted from.
+     * @param subdir Directory-name within saveDir.
+     * @return The assembled image.
+     * @throws IOException if any sub-image failed to fetch.
+     */
+    public/***/ TiledImage collect(List<Future<BasicImage>> fs, MapRequest[][] reqs, String subdir) throws IOException {
+        TiledImage.Builder builder = newBuilder(reqs.length, reqs[0].length, subdir);
 
-        String imageUrl = staticImage.getUrl().toString();
-        imageUrl += "&attribution=false&logo=false";
+        int cols = reqs[0].length;
+        for (int i = 0; i < fs.size(); i++) {
+            Future<BasicImage> f = fs.get(i);
+            MapRequest req = reqs[i / cols][i % cols];
 
-        if (DISABLE_STYLE_CACHING)
-            imageUrl += "&fresh=true";
+            if (f != null) builder.add(await(f));
+            else builder.skip(req.getImageWidth(), req.getImageHeight());
+        }
+        return builder.build();
+    }
 
-        LOGGER.fine("Image-url-request: " + imageUrl);
+    /**
+     * Builds the given images (subdir-names, e.g "code" and "box")
+     * with memory-resident tiles (up to TILE_MEMORY_BUDGET) instead
+     * of png-files. Use for images that are only analysed once:
+     * saving and re-loading them is wasted work, but they can't be
+     * loaded from saveDir later.
+     */
+    public void keepInMemory(String... subdirs) {
+        this.inMemory = subdirs;
+    }
 
+    /**
+     * @param subdir Directory-name within saveDir.
+     * @return Builder of a tiled-image in subdir, keeping tiles in
+     * memory if subdir is kept in memory (see keepInMemory()).
+     */
+    public/***/ TiledImage.Builder newBuilder(int rows, int cols, String subdir) {
+        long budget = 0;
+        for (String s : this.inMemory) {
+            if (s.equals(subdir)) budget = TILE_MEMORY_BUDGET;
+        }
+        return new TiledImage.Builder(rows, cols, this.saveDir.resolve(subdir), budget);
+    }
 
+    /**
+     * @return Result of f, when done.
+     * @throws IOException if f failed, or waiting was interrupted.
+     */
+    public/***/ static <T> T await(Future<T> f) throws IOException {
         try {
-            BufferedImage img = ImageIO.read(new URL(imageUrl));
-            return new BasicImage(img);
+            return f.get();
         }
-        catch (IOException e) {
-            throw new IOException("request: " + imageUrl, e);
+        catch (InterruptedException e) {
+            f.cancel(true);
+            throw new InterruptedIOException("Interrupted while fetching");
         }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return A new pool of FETCH_THREADS daemon-threads.
+     */
+    public/***/ static ExecutorService newFetchPool() {
+        return newFetchPool(FETCH_THREADS);
+    }
+
+    /**
+     * @return A new pool of n daemon-threads.
+     */
+    public/***/ static ExecutorService newFetchPool(int n) {
+        return Executors.newFixedThreadPool(n, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "map-fetch");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
     }
 
     /**
@@ -0,0 +1,41 @@
+package map;
+
+import com.mapbox.services.api.staticimage.v1.MapboxStaticImage;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Fetches map-images from mapbox static-image api.
+ */
+public class MapboxTileSource extends UrlTileSource {
+
+    /**
+     * Id of mapbox-sources, see getId(). */
+    public static final String ID = "mapbox";
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public/***/ URL getUrl(MapRequest req, String style) throws IOException {
+        MapboxStaticImage staticImage = new MapboxStaticImage.Builder()
+            .setAccessToken(MapRequest.TOKEN)
+            .setUsername(MapRequest.USER_NAME)
+            .setStyleId(style)
+            .setLon(req.lon).setLat(req.lat)
+            .setZoom(req.zoom)
+            .setWidth(req.width).setHeight(req.height)
+            .setRetina(req.x2)
+            .build();
+
+        String imageUrl = staticImage.getUrl().toString();
+        imageUrl += "&attribution=false&logo=false";
+
+        if (MapRequest.DISABLE_STYLE_CACHING)
+            imageUrl += "&fresh=true";
+
+        return new URL(imageUrl);
+    }
+}
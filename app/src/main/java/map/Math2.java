@@ -805,6 +805,36 @@ public class Math2 {
         return toInt( extendBounds(toDouble(bs), extTerm) );
     }
 
+    /**
+     * @param bs0 [xmin ymin xmax ymax]
+     * @param bs1 [xmin ymin xmax ymax]
+     * @return True if bounds share a point.
+     */
+    public static boolean intersects(int[] bs0, int[] bs1) {
+        return
+            bs0[0] <= bs1[2] && bs1[0] <= bs0[2] &&
+            bs0[1] <= bs1[3] && bs1[1] <= bs0[3];
+    }
+
+    /**
+     * @return True if inner bounds is inside outer bounds.
+     */
+    public static boolean containsBounds(int[] outer, int[] inner) {
+        return
+            inner[0] >= outer[0] && inner[1] >= outer[1] &&
+            inner[2] <= outer[2] && inner[3] <= outer[3];
+    }
+
+    /**
+     * @return Smallest bounds containing both bounds.
+     */
+    public static int[] union(int[] bs0, int[] bs1) {
+        return new int[]{ Math.min(bs0[0], bs1[0]),
+                          Math.min(bs0[1], bs1[1]),
+                          Math.max(bs0[2], bs1[2]),
+                          Math.max(bs0[3], bs1[3]) };
+    }
+
     /**
      * @return Int-bounds rounded away from center.
      */
@@ -4,26 +4,42 @@ package map;
  * A pixel walk, i.e a walk from one position to another on
  * a straight line, returning the positions that are stepped on.
  * Positions in an int-grid.
+ *
+ * Steps are decided with integer arithmetic only (Bresenham): one
+ * step along the major axis each time, plus one along the minor
+ * axis when the accumulated error says so.
+ *
+ * Walk with next(), or without allocating with the cursor:
+ * <pre>
+ * while (pw.hasNext()) {
+ *     pw.advance();
+ *     ... pw.x(), pw.y() ...
+ * }
+ * </pre>
  */
 public class PixelWalk {
-    public/***/ int nextX, nextY;
-    public/***/ int endX, endY;
-    public/***/ boolean done = false;
+    public/***/ int x, y;
+    public/***/ final int sx, sy;
+    public/***/ final int dx, dy;
+    public/***/ int err;
 
     /**
-     * Diagonal decider. If angle is between 45+-DD go diagonal
-     * up-left. Same principal for the other four diagonals.
-     */
-    public/***/ final double DD = 10;
+     * Number of positions not yet stepped on. */
+    public/***/ int left;
+    public/***/ boolean started = false;
 
     /**
      * Constructs the pixel-walk.
      */
     public PixelWalk(int startX, int startY, int endX, int endY) {
-        this.nextX = startX;
-        this.nextY = startY;
-        this.endX = endX;
-        this.endY = endY;
+        this.dx = Math.abs(endX - startX);
+        this.dy = -Math.abs(endY - startY);
+        this.sx = startX < endX ? 1 : -1;
+        this.sy = startY < endY ? 1 : -1;
+        this.err = this.dx + this.dy;
+        this.left = Math.max(this.dx, -this.dy) + 1;
+        this.x = startX;
+        this.y = startY;
     }
 
     public PixelWalk(int[] start, int[] end) {
@@ -35,45 +51,76 @@ public class PixelWalk {
      * Also updates state.
      */
     public int[] next() {
-        if (this.done) return null;
-        else {
-            int currentX = this.nextX;
-            int currentY = this.nextY;
-            setDone();
-            updateState();
-            return new int[]{currentX, currentY};
+        if (!hasNext()) return null;
+        advance();
+        return new int[]{ this.x, this.y };
+    }
+
+    /**
+     * @return True if there are positions left.
+     */
+    public boolean hasNext() {
+        return this.left > 0;
+    }
+
+    /**
+     * Steps to next position, see x() and y().
+     * @pre hasNext()
+     */
+    public void advance() {
+        this.left--;
+        if (!this.started) {
+            this.started = true;
+            return;
+        }
+
+        int e2 = 2 * this.err;
+        if (e2 >= this.dy) {
+            this.err += this.dy;
+            this.x += this.sx;
+        }
+        if (e2 <= this.dx) {
+            this.err += this.dx;
+            this.y += this.sy;
         }
     }
 
-    public/***/ void setDone() {
-        this.done = nextX == endX && nextY == endY;
+    /**
+     * @return X of current position.
+     * @pre advance() called at least once.
+     */
+    public int x() {
+        return this.x;
     }
 
-    public/***/ void updateState() {
-        double ang = Math2.angle(new int[]{endX-nextX, endY-nextY});
+    /**
+     * @return Y of current position.
+     * @pre advance() called at least once.
+     */
+    public int y() {
+        return this.y;
+    }
 
-        if (ang >= -45 + DD && ang <= 45 - DD) {//right
-            this.nextX += 1;
-        } else if (ang >= 45 - DD && ang <= 45 + DD) {//up-right
-            this.nextX += 1;
-            this.nextY -= 1;
-        } else if (ang >= 45 + DD && ang <= 135 - DD) {//up
-            this.nextY -= 1;
-        } else if (ang >= 135 - DD && ang <= 135 + DD) {// up-left
-            this.nextX -= 1;
-            this.nextY -= 1;
-        } else if (ang >= 135 + DD || ang <= -135 - DD) {//left
-            this.nextX -= 1;
-        } else if (ang >= -135 - DD && ang <= -135 + DD) {//down-left
-            this.nextX -= 1;
-            this.nextY += 1;
-        } else if (ang >= -135 + DD && ang <= -45 - DD) {//down
-            this.nextY += 1;
-        } else if (ang >= -45 - DD && ang <= -45 + DD) {//down-right
-            this.nextX += 1;
-            this.nextY += 1;
-        } else {
-            throw new RuntimeException("Dead-end, ang=" + ang);
+    /**
+     * @return First set point in map when walking from start to end
+     * (both included), as [x,y], or NULL if none. Horizontal walks
+     * skip empty words whole.
+     */
+    public static int[] firstSetPoint(BitMap map, int startX, int startY, int endX, int endY) {
+        if (startY == endY && startX <= endX) {
+            if (startY < 0 || startY >= map.getHeight()) return null;
+            int x = map.nextSetBit(Math.max(startX, 0), startY);
+            return x >= 0 && x <= endX ? new int[]{ x, startY } : null;
         }
+
+        PixelWalk pw = new PixelWalk(startX, startY, endX, endY);
+        while (pw.hasNext()) {
+            pw.advance();
+            if (map.get(pw.x, pw.y)) return new int[]{ pw.x, pw.y };
+        }
+        return null;
+    }
+    public static int[] firstSetPoint(BitMap map, int[] start, int[] end) {
+        return firstSetPoint(map, start[0], start[1], end[0], end[1]);
     }
 }
@@ -0,0 +1,242 @@
+package map;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Set of points [x,y], kept as packed int-coordinates in the order
+ * added. Membership is looked up in an open-addressing hash-table
+ * (linear probing), in constant time.
+ *
+ * Used for the points of glyphs (box-symbols), so fitting boxes
+ * makes no per-point garbage. Sets can be reused: see acquire()
+ * and release().
+ */
+public class PointSet {
+
+    /**
+     * Max number of sets pooled per thread. */
+    public/***/ static final int POOL_SIZE = 8;
+
+    /**
+     * Sets with tables larger than this are not pooled, so one huge
+     * component doesn't keep its memory. */
+    public/***/ static final int MAX_POOLED_TABLE = 1 << 16;
+
+    /**
+     * Released sets, per thread. */
+    public/***/ static final ThreadLocal<LinkedList<PointSet>> POOL =
+        new ThreadLocal<LinkedList<PointSet>>() {
+            @Override
+            protected LinkedList<PointSet> initialValue() {
+                return new LinkedList<PointSet>();
+            }
+        };
+
+    /**
+     * Coordinates of point i, in order added. */
+    public/***/ int[] xs;
+    public/***/ int[] ys;
+    public/***/ int size = 0;
+
+    /**
+     * Hash-table: i+1 for point i, 0 for empty slot. Length is a
+     * power of two, at least twice size. */
+    public/***/ int[] table;
+
+    public PointSet() {
+        this(16);
+    }
+
+    /**
+     * @param capacity Expected number of points.
+     */
+    public PointSet(int capacity) {
+        int n = 16;
+        while (n < capacity * 2) n <<= 1;
+        this.xs = new int[n / 2];
+        this.ys = new int[n / 2];
+        this.table = new int[n];
+    }
+
+    /**
+     * Constructs set of points in ps.
+     */
+    public PointSet(LinkedList<int[]> ps) {
+        this(ps.size());
+        for (int[] p : ps) add(p[0], p[1]);
+    }
+
+    /**
+     * @return A cleared set from the pool of this thread, or a new
+     * one if pool is empty. Give back with release().
+     */
+    public static PointSet acquire() {
+        PointSet ps = POOL.get().poll();
+        return ps != null ? ps : new PointSet();
+    }
+
+    /**
+     * Clears ps and puts it in the pool of this thread. ps must not
+     * be used after this.
+     */
+    public static void release(PointSet ps) {
+        LinkedList<PointSet> pool = POOL.get();
+        if (pool.size() >= POOL_SIZE || ps.table.length > MAX_POOLED_TABLE) return;
+        ps.clear();
+        pool.addFirst(ps);
+    }
+
+    /**
+     * Adds [x,y] if not in set.
+     * @return True if added.
+     */
+    public boolean add(int x, int y) {
+        int s = slot(x, y);
+        if (this.table[s] != 0) return false;
+
+        if (this.size == this.xs.length) {
+            grow();
+            s = slot(x, y);
+        }
+        this.xs[this.size] = x;
+        this.ys[this.size] = y;
+        this.table[s] = ++this.size;
+        return true;
+    }
+
+    /**
+     * @return True if [x,y] in set.
+     */
+    public boolean contains(int x, int y) {
+        return this.table[slot(x, y)] != 0;
+    }
+
+    /**
+     * @return True if p in set.
+     */
+    public boolean contains(int[] p) {
+        return contains(p[0], p[1]);
+    }
+
+    /**
+     * @return Number of points.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return X of point i (in order added).
+     * @pre 0 <= i < size()
+     */
+    public int getX(int i) {
+        return this.xs[i];
+    }
+
+    /**
+     * @return Y of point i (in order added).
+     * @pre 0 <= i < size()
+     */
+    public int getY(int i) {
+        return this.ys[i];
+    }
+
+    /**
+     * Removes all points. Keeps the capacity.
+     */
+    public void clear() {
+        if (this.size * 8 < this.table.length) {
+            for (int i = 0; i < this.size; i++) {
+                int s = hash(this.xs[i], this.ys[i]);
+                while (this.table[s] != i+1) s = (s+1) & (this.table.length-1);
+                this.table[s] = 0;
+            }
+        }
+        else Arrays.fill(this.table, 0);
+        this.size = 0;
+    }
+
+    /**
+     * @return [xmin ymin xmax ymax] of points.
+     * @pre Not empty.
+     */
+    public int[] getBounds() {
+        int[] bs = new int[]{ Integer.MAX_VALUE, Integer.MAX_VALUE,
+                              Integer.MIN_VALUE, Integer.MIN_VALUE };
+        for (int i = 0; i < this.size; i++) {
+            bs[0] = Math.min(bs[0], this.xs[i]);
+            bs[1] = Math.min(bs[1], this.ys[i]);
+            bs[2] = Math.max(bs[2], this.xs[i]);
+            bs[3] = Math.max(bs[3], this.ys[i]);
+        }
+        return bs;
+    }
+
+    /**
+     * @return Mean point.
+     * @pre Not empty.
+     */
+    public double[] mean() {
+        long sx = 0;
+        long sy = 0;
+        for (int i = 0; i < this.size; i++) {
+            sx += this.xs[i];
+            sy += this.ys[i];
+        }
+        return new double[]{ (double) sx / this.size, (double) sy / this.size };
+    }
+
+    /**
+     * @return Points as [x,y], in order added.
+     */
+    public LinkedList<int[]> toList() {
+        LinkedList<int[]> ps = new LinkedList<int[]>();
+        for (int i = 0; i < this.size; i++) ps.add(new int[]{ this.xs[i], this.ys[i] });
+        return ps;
+    }
+
+    /**
+     * @return Slot of [x,y] in table, or the empty slot where it
+     * would go.
+     */
+    public/***/ int slot(int x, int y) {
+        int mask = this.table.length - 1;
+        int s = hash(x, y);
+        int i;
+        while ((i = this.table[s]) != 0) {
+            if (this.xs[i-1] == x && this.ys[i-1] == y) return s;
+            s = (s+1) & mask;
+        }
+        return s;
+    }
+
+    /**
+     * @return Start-slot of [x,y].
+     */
+    public/***/ int hash(int x, int y) {
+        int h = x * 0x9e3779b1 + y * 0x85ebca77;
+        h ^= h >>> 15;
+        return h & (this.table.length - 1);
+    }
+
+    /**
+     * Doubles the capacity.
+     */
+    public/***/ void grow() {
+        this.xs = Arrays.copyOf(this.xs, this.xs.length * 2);
+        this.ys = Arrays.copyOf(this.ys, this.ys.length * 2);
+        this.table = new int[this.table.length * 2];
+
+        int mask = this.table.length - 1;
+        for (int i = 0; i < this.size; i++) {
+            int s = hash(this.xs[i], this.ys[i]);
+            while (this.table[s] != 0) s = (s+1) & mask;
+            this.table[s] = i+1;
+        }
+    }
+}
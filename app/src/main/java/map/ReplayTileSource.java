@@ -0,0 +1,63 @@
+package map;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Replays previously saved responses from a directory, without
+ * network. Responses are looked up by ResponseCache-key, so the
+ * directory of a response-cache (filled by earlier fetches) can be
+ * replayed as is.
+ *
+ * Replayed responses are cached apart from those of the recorded
+ * source (see getId()), so a replay never fills the response-cache
+ * with images later served as fresh ones.
+ */
+public class ReplayTileSource implements TileSource {
+
+    /**
+     * Directory of saved responses: key.png */
+    public/***/ final Path dir;
+
+    /**
+     * Id of the source that filled dir. */
+    public/***/ final String recordedId;
+
+    /**
+     * @param dir Directory of saved responses.
+     * @param recordedId Id of the source that filled dir.
+     */
+    public ReplayTileSource(Path dir, String recordedId) {
+        this.dir = dir;
+        this.recordedId = recordedId;
+    }
+    public ReplayTileSource(Path dir) {
+        this(dir, MapboxTileSource.ID);
+    }
+    public ReplayTileSource(String dir) {
+        this(Paths.get(dir));
+    }
+
+    @Override
+    public String getId() {
+        return "replay:" + this.recordedId;
+    }
+
+    /**
+     * @throws IOException if no response saved for req and style.
+     */
+    @Override
+    public byte[] fetch(MapRequest req, String style) throws IOException {
+        String key = ResponseCache.key(req, style, this.recordedId);
+
+        try {
+            return Files.readAllBytes(this.dir.resolve(key + ResponseCache.SUFFIX));
+        }
+        catch (NoSuchFileException e) {
+            throw new IOException("Not saved: " + req + ", style: " + style, e);
+        }
+    }
+}
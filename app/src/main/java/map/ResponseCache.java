@@ -0,0 +1,264 @@
+package map;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import static loca.Utils.*;
+
+/**
+ * A persistent cache of server responses (encoded map-images) on hdd.
+ * Entries are keyed by tile-source, request-parameters and style-ID
+ * (see key()), and stored exactly as received, so a hit costs no
+ * network I/O and no re-encoding.
+ *
+ * Size is bounded: when the entries exceed the max size, least
+ * recently used entries (oldest modification-time, touched on every
+ * hit) are removed until the cache is below the low-water-mark.
+ *
+ * Writes are atomic (written to a temporary file that is then
+ * renamed), so several processes may share the same directory.
+ * Entries are named: key.png.
+ */
+public class ResponseCache {
+
+    /**
+     * When evicting, removes entries until size is below
+     * maxBytes * this. */
+    public/***/ static final double LOW_WATER_MARK = 0.9;
+
+    /**
+     * Temporary files older than this (ms) are left-overs from
+     * crashed writers and are removed when evicting. */
+    public/***/ static final long STALE_TEMP_AGE = 60 * 60 * 1000;
+
+    public/***/ static final String SUFFIX = ".png";
+    public/***/ static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Directory where entries reside. */
+    public/***/ final Path dir;
+
+    /**
+     * Max total size of entries, in bytes. */
+    public/***/ final long maxBytes;
+
+    /**
+     * Estimated total size of entries. Exact after each eviction,
+     * but other processes may add entries in between. */
+    public/***/ final AtomicLong size = new AtomicLong(-1);
+
+    /**
+     * Statistics. */
+    public/***/ final AtomicLong hits = new AtomicLong();
+    public/***/ final AtomicLong misses = new AtomicLong();
+    public/***/ final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param dir Directory for entries. Created when needed.
+     * @param maxBytes Max total size of entries.
+     */
+    public ResponseCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+    public ResponseCache(String dir, long maxBytes) {
+        this(Paths.get(dir), maxBytes);
+    }
+
+    /**
+     * @param sourceId Id of tile-source serving the response.
+     * @return Cache-key of the request for the style. Same key if
+     * and only if same source, style, lon, lat, zoom, width, height,
+     * x2.
+     */
+    public static String key(MapRequest req, String style, String sourceId) {
+        String s = String.format("%s|%s|%s|%s|%s|%s|%s|%s",
+                                 sourceId, style,
+                                 Double.toString(req.lon),
+                                 Double.toString(req.lat),
+                                 req.zoom, req.width, req.height, req.x2);
+        return sha256(s);
+    }
+
+    /**
+     * @return Cached response, or NULL if not in cache.
+     */
+    public byte[] get(String key) throws IOException {
+        Path p = getPath(key);
+
+        try {
+            byte[] data = Files.readAllBytes(p);
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+            this.hits.incrementAndGet();
+            return data;
+        }
+        catch (NoSuchFileException e) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Adds (or replaces) an entry. Evicts entries if the cache
+     * grows too big.
+     */
+    public void put(String key, byte[] data) throws IOException {
+        Files.createDirectories(this.dir);
+        Path tmp = Files.createTempFile(this.dir, key, TEMP_SUFFIX);
+
+        try {
+            Files.write(tmp, data);
+            move(tmp, getPath(key));
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        if (this.size.get() < 0) evict();
+        else if (this.size.addAndGet(data.length) > this.maxBytes) evict();
+    }
+
+    /**
+     * Removes an entry, if in cache.
+     */
+    public void remove(String key) throws IOException {
+        Path p = getPath(key);
+        long len = p.toFile().length();
+        if (Files.deleteIfExists(p) && this.size.get() >= 0)
+            this.size.addAndGet(-len);
+    }
+
+    /**
+     * Removes least recently used entries until size is below
+     * the low-water-mark. Recounts the size from hdd, so entries
+     * added by other processes are accounted for.
+     */
+    public/***/ synchronized void evict() throws IOException {
+        File[] fs = this.dir.toFile().listFiles();
+        if (fs == null) {
+            this.size.set(0);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long total = 0;
+        int n = 0;
+        File[] entries = new File[fs.length];
+        final long[] times = new long[fs.length];
+
+        for (File f : fs) {
+            if (f.getName().endsWith(TEMP_SUFFIX)) {
+                if (now - f.lastModified() > STALE_TEMP_AGE) f.delete();
+            }
+            else if (f.getName().endsWith(SUFFIX)) {
+                total += f.length();
+                entries[n++] = f;
+            }
+        }
+
+        if (total > this.maxBytes) {
+            entries = Arrays.copyOf(entries, n);
+            Arrays.sort(entries, new Comparator<File>() {
+                    @Override
+                    public int compare(File f0, File f1) {
+                        return Long.compare(f0.lastModified(), f1.lastModified());
+                    }
+                });
+
+            long target = (long)(this.maxBytes * LOW_WATER_MARK);
+            for (int i = 0; i < entries.length && total > target; i++) {
+                long len = entries[i].length();
+                if (entries[i].delete()) {
+                    total -= len;
+                    this.evictions.incrementAndGet();
+                }
+            }
+            LOGGER.fine("Response-cache evicted down to " + total + " bytes");
+        }
+
+        this.size.set(total);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        TiledImage.cleanDir(this.dir.toFile());
+        this.size.set(0);
+    }
+
+    /**
+     * @return Number of get-calls that found an entry.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return Number of get-calls that found no entry.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return Number of entries removed by eviction.
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return Path to entry: dir/key.png
+     */
+    public/***/ Path getPath(String key) {
+        return this.dir.resolve(key + SUFFIX);
+    }
+
+    /**
+     * Renames src to dest, atomically if supported by file-system.
+     */
+    public/***/ static void move(Path src, Path dest) throws IOException {
+        try {
+            Files.move(src, dest, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(src, dest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return Hex-encoded sha-256 digest of s.
+     */
+    public/***/ static String sha256(String s) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                .digest(s.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) sb.append(String.format("%02x", b));
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits(%s)_misses(%s)_evictions(%s)_@(%s)",
+                             getHits(), getMisses(), getEvictions(), dir);
+    }
+}
@@ -0,0 +1,211 @@
+package map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import static loca.Utils.*;
+
+/**
+ * An in-process http-server standing in for mapbox servers, for
+ * benchmarks and load-tests without internet. Serves images from a
+ * backing tile-source after a configurable latency. Clients fetch
+ * through getSource(), i.e over a real (loopback) http-connection.
+ *
+ * Url: http://127.0.0.1:port/style?lon=x&lat=x&zoom=x&width=x&height=x&x2=x
+ */
+public class StandInTileServer {
+
+    public/***/ final HttpServer server;
+    public/***/ final ExecutorService pool;
+
+    /**
+     * Images are served from this source. */
+    public/***/ final TileSource backing;
+
+    /**
+     * Milliseconds to wait before responding. */
+    public/***/ volatile long latency;
+
+    /**
+     * Number of images served. */
+    public/***/ final AtomicLong served = new AtomicLong();
+
+    /**
+     * Starts the server on a free port.
+     *
+     * @param backing Source of served images.
+     * @param latency Milliseconds to wait before each response.
+     */
+    public StandInTileServer(TileSource backing, long latency) throws IOException {
+        this.backing = backing;
+        this.latency = latency;
+        this.pool = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "stand-in-tile-server");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+        InetSocketAddress addr = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        this.server = HttpServer.create(addr, 0);
+        this.server.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange ex) throws IOException {
+                    serve(ex);
+                }
+            });
+        this.server.setExecutor(this.pool);
+        this.server.start();
+    }
+
+    /**
+     * Serves blank (transparent) images of requested dims.
+     */
+    public StandInTileServer(long latency) throws IOException {
+        this(new BlankTileSource(), latency);
+    }
+
+    /**
+     * @return Tile-source fetching from this server.
+     */
+    public TileSource getSource() {
+        final int port = this.server.getAddress().getPort();
+
+        final String id = "stand-in:" + this.backing.getId();
+
+        return new UrlTileSource() {
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public URL getUrl(MapRequest req, String style) throws IOException {
+                return new URL(String.format("http://127.0.0.1:%s/%s?lon=%s&lat=%s&zoom=%s&width=%s&height=%s&x2=%s",
+                                             port, style,
+                                             Double.toString(req.lon),
+                                             Double.toString(req.lat),
+                                             req.zoom, req.width, req.height, req.x2));
+            }
+        };
+    }
+
+    /**
+     * Set milliseconds to wait before each response.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @return Number of images served.
+     */
+    public long getNoServed() {
+        return this.served.get();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * Responds to one request: 200 and the image, or 404 if the
+     * backing source fails.
+     */
+    public/***/ void serve(HttpExchange ex) throws IOException {
+        try {
+            String style = ex.getRequestURI().getPath().substring(1);
+            Map<String, String> ps = parseQuery(ex.getRequestURI().getRawQuery());
+            MapRequest req = new MapRequest(Double.parseDouble(ps.get("lon")),
+                                            Double.parseDouble(ps.get("lat")),
+                                            Integer.parseInt(ps.get("width")),
+                                            Integer.parseInt(ps.get("height")),
+                                            Integer.parseInt(ps.get("zoom")),
+                                            Boolean.parseBoolean(ps.get("x2")));
+
+            if (this.latency > 0) Thread.sleep(this.latency);
+
+            byte[] data;
+            try {
+                data = this.backing.fetch(req, style);
+            }
+            catch (IOException e) {
+                LOGGER.info(e.toString());
+                ex.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            ex.getResponseHeaders().set("Content-Type", "image/png");
+            ex.sendResponseHeaders(200, data.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(data);
+            }
+            this.served.incrementAndGet();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e) {
+            ex.sendResponseHeaders(400, -1);
+        }
+        finally {
+            ex.close();
+        }
+    }
+
+    /**
+     * @param q Query: k0=v0&k1=v1..
+     * @return Map k->v.
+     */
+    public/***/ static Map<String, String> parseQuery(String q) {
+        Map<String, String> ps = new HashMap<String, String>();
+        if (q == null) return ps;
+
+        for (String kv : q.split("&")) {
+            int i = kv.indexOf('=');
+            if (i > 0) ps.put(kv.substring(0, i), kv.substring(i+1));
+        }
+        return ps;
+    }
+
+
+    /**
+     * Tile-source of transparent images with requested dims.
+     */
+    public static class BlankTileSource implements TileSource {
+
+        @Override
+        public String getId() {
+            return "blank";
+        }
+
+        @Override
+        public byte[] fetch(MapRequest req, String style) throws IOException {
+            int f = req.x2 ? 2 : 1;
+            BasicImage img = new BasicImage(req.width * f, req.height * f);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(img.img, "png", out);
+            return out.toByteArray();
+        }
+    }
+}
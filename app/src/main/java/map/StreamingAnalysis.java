@@ -0,0 +1,112 @@
+package map;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import static loca.Utils.*;
+
+/**
+ * Finds map-objects in code- and box-image while they are being
+ * fetched (see MapRequest.fetch3(RowListener)). As soon as the rows
+ * covering an analysis-window (with its extension-margin) have
+ * arrived, labels in that window are detected and decoded.
+ *
+ * Windows are analysed in the same order as by
+ * LabelLayoutIterator.getLayouts(), and duplicates are removed in
+ * the same way, so the result is the same as analysing the complete
+ * images afterwards.
+ */
+public class StreamingAnalysis implements MapRequest.RowListener {
+
+    /**
+     * Analysis-windows not yet analysed, row by row. */
+    public/***/ LinkedList<int[]> windows;
+
+    /**
+     * Height of complete images. */
+    public/***/ final int height;
+
+    /**
+     * Layouts found so far, unique. */
+    public/***/ LayoutIndex lays = new LayoutIndex();
+
+    /**
+     * Labels decoded so far. */
+    public/***/ List<Label> labs = new LinkedList<Label>();
+
+    /**
+     * Registry used for decoding, the current one at construction. */
+    public/***/ final DecoderRegistry registry;
+
+    /**
+     * Nano-time at construction, and when the first label was
+     * decoded (-1 until then). */
+    public/***/ final long startTime;
+    public/***/ long firstLabelTime = -1;
+
+    /**
+     * @param v View describing images.
+     * @param w Width of complete images.
+     * @param h Height of complete images.
+     */
+    public StreamingAnalysis(MapImageView v, int w, int h) throws IOException {
+        this.registry = DecoderRegistry.get();
+        this.windows = LabelLayoutIterator.getAnalysisWindows(w, h, v);
+        this.height = h;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Analyses every window whose rows have all been fetched.
+     */
+    @Override
+    public void rowsFetched(TiledImage cimg, TiledImage bimg) throws IOException {
+        boolean done = bimg.getHeight() == this.height;
+
+        while (!this.windows.isEmpty()) {
+            int[] bs = this.windows.getFirst();
+            if (!done && bs[3] >= bimg.getHeight()) return;
+
+            this.windows.removeFirst();
+            analyse(bs, cimg, bimg);
+        }
+    }
+
+    /**
+     * Detects and decodes new labels in a window.
+     */
+    public/***/ void analyse(int[] bs, TiledImage cimg, TiledImage bimg) throws IOException {
+        List<LabelLayout> news = new LinkedList<LabelLayout>();
+
+        for (LabelLayout lay : LabelLayoutIterator.getLayouts(bimg, bs)) {
+            if (this.lays.add(lay)) news.add(lay);
+        }
+
+        this.labs.addAll(MapObjects.getLabels(news, cimg, bimg, this.registry));
+
+        if (this.firstLabelTime < 0 && !this.labs.isEmpty()) {
+            this.firstLabelTime = System.nanoTime();
+            LOGGER.fine("First label after " + getTimeToFirstLabel() + " ms");
+        }
+    }
+
+    /**
+     * @return Map-objects of all labels.
+     * @pre All rows fetched.
+     */
+    public MapObjects getObjects() {
+        if (!this.windows.isEmpty())
+            throw new RuntimeException("Not all windows analysed");
+
+        return new MapObjects(MapObjects.mergeLabels(this.labs));
+    }
+
+    /**
+     * @return Milliseconds from construction until first label
+     * decoded, or -1 if none yet.
+     */
+    public long getTimeToFirstLabel() {
+        if (this.firstLabelTime < 0) return -1;
+        return (this.firstLabelTime - this.startTime) / 1000000;
+    }
+}
@@ -0,0 +1,103 @@
+package map;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs cpu-bound tasks (label-layout analysis, label decoding) on
+ * worker-threads shared by all callers, or one after the other.
+ * Tasks that themselves call runAll() run their sub-tasks one after
+ * the other, so that they never wait for a worker held by a task
+ * waiting for them.
+ * Callers decide whether to run concurrently, see
+ * LabelLayoutIterator.CONCURRENT_ANALYSIS and
+ * MapObjects.CONCURRENT_DECODING.
+ */
+public class Tasks {
+
+    /**
+     * Number of worker-threads when running concurrently (each
+     * might hold an analysis-window in memory). */
+    public static int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Executor used when running concurrently. If null, a pool of
+     * THREADS daemon-threads is created on first use and then shared
+     * by all calls. */
+    public static ExecutorService EXECUTOR = null;
+
+    /**
+     * Runs tasks, on EXECUTOR if concurrent, else (or if called from
+     * a worker-thread) one after the other.
+     *
+     * @return Results, in order of tasks.
+     */
+    public static <T> List<T> runAll(List<Callable<T>> tasks, boolean concurrent) throws IOException {
+        List<T> res = new ArrayList<T>();
+
+        if (!concurrent || tasks.size() <= 1 || Thread.currentThread() instanceof Worker) {
+            for (Callable<T> t : tasks) {
+                try {
+                    res.add(t.call());
+                }
+                catch (IOException e) { throw e; }
+                catch (RuntimeException e) { throw e; }
+                catch (Exception e) { throw new IOException(e); }
+            }
+            return res;
+        }
+
+        ExecutorService pool = getExecutor();
+
+        List<Future<T>> fs = new ArrayList<Future<T>>();
+        try {
+            for (Callable<T> t : tasks) {
+                fs.add(pool.submit(t));
+            }
+            for (Future<T> f : fs) {
+                res.add(MapRequest.await(f));
+            }
+        }
+        finally {
+            for (Future<T> f : fs) f.cancel(true);
+        }
+        return res;
+    }
+
+    /**
+     * @return EXECUTOR, created if null.
+     */
+    public/***/ static synchronized ExecutorService getExecutor() {
+        if (EXECUTOR == null) EXECUTOR = newPool(THREADS);
+        return EXECUTOR;
+    }
+
+    /**
+     * @return A new pool of n daemon-threads.
+     */
+    public/***/ static ExecutorService newPool(int n) {
+        return Executors.newFixedThreadPool(n, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Worker(r);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    /**
+     * Thread of a pool from newPool().
+     */
+    public/***/ static class Worker extends Thread {
+        public/***/ Worker(Runnable r) {
+            super(r, "map-task");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package map;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of decoded tiles of a tiled-image. When the
+ * cached tiles exceed the max size (in bytes), least recently used
+ * tiles are removed. Safe for concurrent readers.
+ */
+public class TileCache {
+
+    /**
+     * Cached tiles by key (see key()), in access-order. */
+    public/***/ final LinkedHashMap<Long, BasicImage> tiles =
+        new LinkedHashMap<Long, BasicImage>(16, 0.75f, true);
+
+    /**
+     * Max total size of cached tiles, and current size, in bytes. */
+    public/***/ final long maxBytes;
+    public/***/ long bytes = 0;
+
+    /**
+     * Statistics. */
+    public/***/ final AtomicLong hits = new AtomicLong();
+    public/***/ final AtomicLong misses = new AtomicLong();
+    public/***/ final AtomicLong evictions = new AtomicLong();
+    public/***/ final AtomicLong decodeNanos = new AtomicLong();
+
+    /**
+     * @param maxBytes Max total size of cached tiles. At least the
+     * last added tile is cached, even if bigger.
+     */
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return Cached tile at [r,c], or NULL if not cached.
+     */
+    public synchronized BasicImage get(int r, int c) {
+        BasicImage tile = this.tiles.get(key(r, c));
+
+        if (tile != null) this.hits.incrementAndGet();
+        else this.misses.incrementAndGet();
+        return tile;
+    }
+
+    /**
+     * @return Cached tile at [r,c], or NULL if not cached. Not
+     * counted in statistics.
+     */
+    public synchronized BasicImage peek(int r, int c) {
+        return this.tiles.get(key(r, c));
+    }
+
+    /**
+     * Adds (or replaces) tile at [r,c]. Evicts least recently used
+     * tiles if the cache grows too big.
+     */
+    public synchronized void put(int r, int c, BasicImage tile) {
+        BasicImage old = this.tiles.put(key(r, c), tile);
+        if (old != null) this.bytes -= old.getNoBytes();
+        this.bytes += tile.getNoBytes();
+
+        Iterator<Map.Entry<Long, BasicImage>> it = this.tiles.entrySet().iterator();
+        while (this.bytes > this.maxBytes && this.tiles.size() > 1) {
+            BasicImage eldest = it.next().getValue();
+            it.remove();
+            this.bytes -= eldest.getNoBytes();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes all tiles.
+     */
+    public synchronized void clear() {
+        this.tiles.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * Records time spent loading (decoding) a tile missing in cache.
+     */
+    public void addDecodeTime(long nanos) {
+        this.decodeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return Number of get-calls that found the tile.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return Number of get-calls that didn't find the tile.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return Number of tiles removed to stay within max size.
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return Total time spent loading missing tiles, in ms.
+     */
+    public long getDecodeTime() {
+        return this.decodeNanos.get() / 1000000;
+    }
+
+    /**
+     * @return Current total size of cached tiles, in bytes.
+     */
+    public synchronized long getNoBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return Key of tile at [r,c].
+     */
+    public/***/ static Long key(int r, int c) {
+        return ((long) r << 32) | (c & 0xffffffffL);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits(%s)_misses(%s)_evictions(%s)_decode(%sms)_bytes(%s)",
+                             getHits(), getMisses(), getEvictions(), getDecodeTime(), getNoBytes());
+    }
+}
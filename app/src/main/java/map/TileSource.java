@@ -0,0 +1,29 @@
+package map;
+
+import java.io.IOException;
+
+/**
+ * A source of map-images. Given a request and a style, provides
+ * the image encoded as a server would (png). MapRequest fetches all
+ * its images through a tile-source, so the analysis pipeline can run
+ * against mapbox servers, saved responses or a local stand-in.
+ */
+public interface TileSource {
+
+    /**
+     * @param req Request defining area, zoom and quality.
+     * @param style Style ID.
+     * @return Encoded image defined by req and style.
+     * @pre Max width,height of req defined by
+     * MapRequest.IMAGE_REQUEST_SIZE_LIMIT.
+     * @throws IOException if the image couldn't be fetched.
+     */
+    byte[] fetch(MapRequest req, String style) throws IOException;
+
+    /**
+     * @return Id of this source, part of response-cache-keys so that
+     * responses of different sources are never mixed up. Sources
+     * serving the same images have the same id.
+     */
+    String getId();
+}
@@ -12,8 +12,12 @@ import java.util.LinkedList;
 
 /**
  * An image made up of tiles. Tiles are saved on hdd and loaded
- * into memory when necessary. Only one tile is cached in memory
- * at a time. The image is not editable.
+ * into memory when necessary. Loaded tiles are kept in a bounded
+ * LRU-cache (see TileCache). The image is not editable, and safe
+ * for concurrent readers.
+ *
+ * Tiles may also be memory-resident (see Builder with memory-
+ * budget): then they are never saved, and never re-loaded.
  *
  * The dims of the tiles are unspecified, but always follows:
  *  -All are perfect squares with same width/height, except
@@ -21,7 +25,8 @@ import java.util.LinkedList;
  *  -Last row tiles may be shorter.
  *
  * Tiles are saved in png-format in given directory, following
- * the naming convention: tile-r-c.png.
+ * the naming convention: tile-r-c.png. A tile without file is
+ * blank (transparent), see Builder.skip().
  */
 public class TiledImage {
 
@@ -30,11 +35,32 @@ public class TiledImage {
     public/***/ final Path dir;
 
     /**
-     * Tile in memory (cached), at specified row and column.
-     * Only one cached tile at the time: last loaded tile. */
-    public/***/ BasicImage memTile;
-    public/***/ int memTileRow;
-    public/***/ int memTileCol;
+     * Max bytes of loaded tiles cached per image. */
+    public static long TILE_CACHE_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Loaded tiles, recently used. */
+    public/***/ final TileCache cache = new TileCache(TILE_CACHE_SIZE);
+
+    /**
+     * Last tile returned from cache, checked first so repeated
+     * reads of the same tile needn't lock or allocate. */
+    public/***/ volatile LastTile lastTile;
+
+    /**
+     * One lock per tile, held while loading it, so threads missing
+     * the same tile load it once. */
+    public/***/ Object[] loadLocks;
+
+    /**
+     * Memory-resident tiles [r][c], or NULL if all tiles on hdd.
+     * A NULL-element means the tile is on hdd (or skipped). Shared
+     * with the builder. */
+    public/***/ final BasicImage[][] memTiles;
+
+    /**
+     * True after delete(). */
+    public/***/ volatile boolean deleted = false;
 
     /**
      * Image data, so don't have to load and investigate.
@@ -56,17 +82,27 @@ public class TiledImage {
      * @param cs Number of columns in tile-layout.
      */
     public/***/ TiledImage(Path dir, int w, int h, int tw, int th, int rs, int cs) throws IOException {
+        this(dir, w, h, tw, th, rs, cs, null);
+    }
+
+    /**
+     * Constructs the tiledImage from memory-resident and saved tiles.
+     *
+     * @param mem Memory-resident tiles [r][c], NULL where on hdd.
+     */
+    public/***/ TiledImage(Path dir, int w, int h, int tw, int th, int rs, int cs, BasicImage[][] mem) throws IOException {
         this.dir = dir;
+        this.memTiles = mem;
         this.width = w;
         this.height = h;
         this.tileWidth = tw;
         this.tileHeight = th;
         this.rows = rs;
         this.cols = cs;
+        this.loadLocks = new Object[rs * cs];
+        for (int i = 0; i < this.loadLocks.length; i++) this.loadLocks[i] = new Object();
 
-        this.memTile = loadTile(0, 0, dir);
-        this.memTileRow = 0;
-        this.memTileCol = 0;
+        getTile(0, 0);
     }
 
 
@@ -123,9 +159,68 @@ public class TiledImage {
      * @return Color of specified point.
      */
     public Color getColor(int[] p) throws IOException {
-        int[] rc_xy = getTileAndPos(p);
-        BasicImage tile = getTile(rc_xy[0], rc_xy[1]);
-        return tile.getColor(rc_xy[2], rc_xy[3]);
+        return new Color(getARGB(p[0], p[1]), true);
+    }
+
+    /**
+     * @return Color of pixel as non-premultiplied argb-int, without
+     * allocation (if tile cached).
+     * @throws RuntimeException if outside image.
+     */
+    public int getARGB(int x, int y) throws IOException {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height)
+            throw new RuntimeException("Out of bounds");
+
+        BasicImage tile = getTile(y / this.tileHeight, x / this.tileWidth);
+        return tile.getARGB(x % this.tileWidth, y % this.tileHeight);
+    }
+
+    /**
+     * @return Alpha-value (0-255) of pixel, without allocation (if
+     * tile cached).
+     * @throws RuntimeException if outside image.
+     */
+    public int getAlpha(int x, int y) throws IOException {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height)
+            throw new RuntimeException("Out of bounds");
+
+        BasicImage tile = getTile(y / this.tileHeight, x / this.tileWidth);
+        return tile.getAlpha(x % this.tileWidth, y % this.tileHeight);
+    }
+
+    /**
+     * Reads alpha-values (0-255) of a whole pixel-row, over all
+     * tile-columns.
+     *
+     * @param y Row.
+     * @param dst Destination, at least width long.
+     * @return dst
+     */
+    public int[] getAlphaRow(int y, int[] dst) throws IOException {
+        return getAlphaRow(y, 0, this.width, dst);
+    }
+
+    /**
+     * Reads alpha-values (0-255) of part of a pixel-row. Only tiles
+     * overlapping the part are read.
+     *
+     * @param y Row.
+     * @param x0 First column.
+     * @param w Number of pixels.
+     * @param dst Destination, at least w long. dst[0] is pixel x0.
+     * @return dst
+     */
+    public int[] getAlphaRow(int y, int x0, int w, int[] dst) throws IOException {
+        int r = y / this.tileHeight;
+        int ty = y % this.tileHeight;
+        int x1 = x0 + w - 1;
+
+        for (int c = x0 / this.tileWidth; c <= x1 / this.tileWidth; c++) {
+            int xmin = Math.max(x0, c * this.tileWidth);
+            int xmax = Math.min(x1, (c+1) * this.tileWidth - 1);
+            getTile(r, c).getAlphaRow(ty, xmin - c * this.tileWidth, xmax - xmin + 1, dst, xmin - x0);
+        }
+        return dst;
     }
 
     /**
@@ -140,8 +235,9 @@ public class TiledImage {
     }
 
     /**
-     * Crops out a subimage. Tiles are concatenated as needed.
-     * Beware of heap overflows. ~Minimizes no. reads from hdd.
+     * Crops out a subimage. The part of every overlapping tile that
+     * is inside bounds is copied, row by row. Beware of heap
+     * overflows. ~Minimizes no. reads from hdd.
      *
      * @param bs [xmin, ymin, xmax, ymax]. If outside, snaped inside.
      * @return A subimage defined by bounds.
@@ -149,38 +245,26 @@ public class TiledImage {
      */
     public BasicImage getSubImage(int[] bs) throws IOException {
         bs = Math2.getInsideBounds(bs, getWidth(), getHeight());
-        BasicImage tiles = getSubImage_fullTiles(bs);
-        int[] tl_rcxy = getTileAndPos(new int[]{bs[0], bs[1]});
-        int xmin = tl_rcxy[2];
-        int ymin = tl_rcxy[3];
-        int xmax = xmin + (bs[2] - bs[0]);
-        int ymax = ymin + (bs[3] - bs[1]);
-        return tiles.getSubImage(xmin, ymin, xmax, ymax);
-    }
-
-    /**
-     * @return Sub-image split in full tile-blocks where bounds fit.
-     */
-    public/***/ BasicImage getSubImage_fullTiles(int[] bs) throws IOException {
-        LinkedList<LinkedList<BasicImage>> tiles = new LinkedList<LinkedList<BasicImage>>();
-        int[] tl_rcxy = getTileAndPos(new int[]{bs[0], bs[1]});
-
-        int xmin = bs[0] - tl_rcxy[2];
-        int ymin = bs[1] - tl_rcxy[3];
-
-        for (int y = ymin; y <= bs[3]; y += getTileHeight()) {
-            LinkedList<BasicImage> row = new LinkedList<BasicImage>();
-
-            for (int x = xmin; x <= bs[2]; x += getTileWidth()) {
-                int[] rc = getTileAndPos(new int[]{x, y});
-                BasicImage tile = getTile(rc[0], rc[1]);
-                row.add(tile);
+        BasicImage sub = new BasicImage(bs[2] - bs[0] + 1, bs[3] - bs[1] + 1);
+
+        int tw = getTileWidth();
+        int th = getTileHeight();
+        for (int r = bs[1] / th; r <= bs[3] / th; r++) {
+            for (int c = bs[0] / tw; c <= bs[2] / tw; c++) {
+                // overlap of tile and bounds, in image coordinates
+                int xmin = Math.max(bs[0], c * tw);
+                int ymin = Math.max(bs[1], r * th);
+                int xmax = Math.min(bs[2], (c+1) * tw - 1);
+                int ymax = Math.min(bs[3], (r+1) * th - 1);
+
+                sub.copyPixels(getTile(r, c),
+                               xmin - c * tw, ymin - r * th,
+                               xmax - xmin + 1, ymax - ymin + 1,
+                               xmin - bs[0], ymin - bs[1]);
             }
-
-            tiles.add(row);
         }
 
-        return BasicImage.concatenateImages(tiles);
+        return sub;
     }
 
     // /**
@@ -256,28 +340,57 @@ public class TiledImage {
 
     /**
      * Returns specified tile. If tile not in memory, loads from
-     * hdd. NOTE: Returned tile is cached.
+     * hdd. NOTE: Returned tile is cached. Safe for concurrent
+     * callers.
      *
      * @param r Row.
      * @param c Column.
      * @return Tile at [r,c].
      */
     public/***/ BasicImage getTile(int r, int c) throws IOException {
-        if (r == this.memTileRow && c == this.memTileCol)
-            return this.memTile;
+        if (this.memTiles != null && this.memTiles[r][c] != null)
+            return this.memTiles[r][c];
+
+        LastTile last = this.lastTile;
+        if (last != null && last.r == r && last.c == c)
+            return last.tile;
+
+        BasicImage tile = this.cache.get(r, c);
+        if (tile == null) {
+            synchronized (this.loadLocks[r * this.cols + c]) {
+                tile = this.cache.peek(r, c);
+                if (tile == null) {
+                    long t0 = System.nanoTime();
+                    tile = loadTile(r, c);
+                    this.cache.addDecodeTime(System.nanoTime() - t0);
+                    this.cache.put(r, c, tile);
+                }
+            }
+        }
 
-        BasicImage tile = loadTile(r, c);
-        cache(r, c, tile);
+        this.lastTile = new LastTile(r, c, tile);
         return tile;
     }
 
     /**
-     * Caches specified tile.
+     * A tile and its position.
+     */
+    public/***/ static class LastTile {
+        public/***/ final int r, c;
+        public/***/ final BasicImage tile;
+
+        public/***/ LastTile(int r, int c, BasicImage tile) {
+            this.r = r;
+            this.c = c;
+            this.tile = tile;
+        }
+    }
+
+    /**
+     * @return Cache of loaded tiles, for statistics.
      */
-    public/***/ void cache(int r, int c, BasicImage tile) {
-        this.memTileRow = r;
-        this.memTileCol = c;
-        this.memTile = tile;
+    public TileCache getCache() {
+        return this.cache;
     }
 
     /**
@@ -286,7 +399,24 @@ public class TiledImage {
     public/***/ static BasicImage loadTile(int r, int c, Path dir) throws IOException {
         return BasicImage.load(getTilePath(r, c, dir));
     }
+    /**
+     * @return Tile at specified row/column: memory-resident, or
+     * loaded from hdd, or a blank tile if it has no file (skipped
+     * when built).
+     * @throws RuntimeException if deleted.
+     */
     public/***/ BasicImage loadTile(int r, int c) throws IOException {
+        if (this.deleted)
+            throw new RuntimeException("Tiled-image deleted: " + this.dir);
+
+        if (this.memTiles != null && this.memTiles[r][c] != null)
+            return this.memTiles[r][c];
+
+        if (!getTilePath(r, c).toFile().exists()) {
+            int w = c == this.cols-1 ? getLastColWidth() : getTileWidth();
+            int h = r == this.rows-1 ? getLastRowHeight() : getTileHeight();
+            return new BasicImage(w, h);
+        }
         return loadTile(r, c, this.dir);
     }
 
@@ -320,7 +450,7 @@ public class TiledImage {
      * for finding dims etc.
      *
      * @parm dir Directory where tiles resides.
-     * @param Loaded TileImage with top-left tile as memTile.
+     * @param Loaded TileImage with top-left tile cached.
      * @throws RuntimeException if bad tiles in directory.
      */
     public static TiledImage load(Path dir) throws IOException {
@@ -372,9 +502,15 @@ public class TiledImage {
 
     /**
      * Delets this tiled-image from file. Don't use the reference
-     * anymore!
+     * anymore! (reading tiles throws RuntimeException)
      */
     public void delete() {
+        this.deleted = true;
+        if (this.memTiles != null) {
+            for (BasicImage[] row : this.memTiles) Arrays.fill(row, null);
+        }
+        this.cache.clear();
+        this.lastTile = null;
         deleteDir(getDir().toFile());
     }
 
@@ -395,7 +531,11 @@ public class TiledImage {
      */
     public/***/ static void deleteDir(File dir) {
         if (!dir.isDirectory()) return;
-        cleanDir(dir);
+
+        for (File f : dir.listFiles()) {
+            if (f.isDirectory()) deleteDir(f);
+            else f.delete();
+        }
         dir.delete();
     }
 
@@ -459,7 +599,8 @@ public class TiledImage {
 
 
     /**
-     * Builds the TiledImage by saving tiles to files.
+     * Builds the TiledImage by saving tiles to files, or by keeping
+     * them in memory while within a memory-budget.
      */
     public static class Builder {
         public/***/ int c = 0;
@@ -474,6 +615,15 @@ public class TiledImage {
         public/***/ int lastColW = -1;
         public/***/ int lastRowH = -1;
 
+        /**
+         * Memory-resident tiles, or NULL if all saved. */
+        public/***/ BasicImage[][] mem;
+
+        /**
+         * Max bytes of memory-resident tiles, and bytes so far. */
+        public/***/ long memBudget;
+        public/***/ long memBytes = 0;
+
         /**
          * Initiates builder AND DELETES ALL FILES IN dir.
          *
@@ -482,27 +632,74 @@ public class TiledImage {
          * @param dir Direction where tiles will be saved.
          */
         public Builder(int rs, int cs, Path dir) {
+            this(rs, cs, dir, 0);
+        }
+
+        /**
+         * Initiates builder AND DELETES ALL FILES IN dir. Tiles are
+         * kept in memory (not saved) until they add up to memBudget
+         * bytes, remaining tiles are saved.
+         *
+         * @param memBudget Max bytes of memory-resident tiles. 0 to
+         * save all tiles.
+         */
+        public Builder(int rs, int cs, Path dir, long memBudget) {
             this.rows = rs;
             this.cols = cs;
             this.dir = dir;
+            this.memBudget = memBudget;
+            if (memBudget > 0) this.mem = new BasicImage[rs][cs];
 
             cleanDir(dir.toFile());
         }
 
         /**
-         * Adds a tile to the builder by saving it to file with
-         * correct name. Adds 'left-to-right, row-by-row'.
+         * Adds a tile to the builder by keeping it in memory, or
+         * saving it to file with correct name. Adds 'left-to-right,
+         * row-by-row'.
          *
          * @pre All tiles perfect squares with same dims, except
          * last column (may be thinner), last row (may be shorter).
          * @throws RuntimeException if bad dims.
          */
         public void add(BasicImage tile) throws IOException {
-            testDims(tile);
+            testDims(tile.getWidth(), tile.getHeight());
+
+            long bytes = tile.getNoBytes();
+            if (mem != null && memBytes + bytes <= memBudget) {
+                mem[r][c] = tile;
+                memBytes += bytes;
+            }
+            else {
+                Path p = getTilePath(r, c, dir);
+                tile.save(p);
+            }
+            next();
+        }
 
-            Path p = getTilePath(r, c, dir);
-            tile.save(p);
+        /**
+         * Skips a tile: no file is saved, and the tile will be blank
+         * (transparent) in the built image. Top-left and bottom-right
+         * tiles are saved blank though, so that load() works.
+         *
+         * @param w Width of skipped tile.
+         * @param h Height of skipped tile.
+         * @throws RuntimeException if bad dims.
+         */
+        public void skip(int w, int h) throws IOException {
+            if ((r == 0 && c == 0) || (r == rows-1 && c == cols-1)) {
+                add(new BasicImage(w, h));
+                return;
+            }
 
+            testDims(w, h);
+            next();
+        }
+
+        /**
+         * Steps to next tile position.
+         */
+        public/***/ void next() {
             c++;
             if (c >= cols) {
                 c = 0;
@@ -516,21 +713,21 @@ public class TiledImage {
         /**
          * @throws RuntimeException if inconsistent dims.
          */
-        public/***/ void testDims(BasicImage tile) {
+        public/***/ void testDims(int w, int h) {
             // set dims
             if (r == 0 && c == 0) {
-                tileW = tile.getWidth();
-                tileH = tile.getHeight();
+                tileW = w;
+                tileH = h;
             }
-            if (c == cols-1 && r == 0) lastColW = tile.getWidth();
-            if (r == rows-1 && c == 0) lastRowH = tile.getHeight();
+            if (c == cols-1 && r == 0) lastColW = w;
+            if (r == rows-1 && c == 0) lastRowH = h;
 
             // test dims
-            if (c == cols-1) assertEq(tile.getWidth(), lastColW);
-            else assertEq(tile.getWidth(), tileW);
+            if (c == cols-1) assertEq(w, lastColW);
+            else assertEq(w, tileW);
 
-            if (r == rows-1) assertEq(tile.getHeight(), lastRowH);
-            else assertEq(tile.getHeight(), tileH);
+            if (r == rows-1) assertEq(h, lastRowH);
+            else assertEq(h, tileH);
         }
         public/***/ void assertEq(int x, int y) {
             if (x != y) throw new RuntimeException("Bad tile dims");
@@ -547,7 +744,24 @@ public class TiledImage {
             int w = tileW * (cols - 1) + lastColW;
             int h = tileH * (rows - 1) + lastRowH;
 
-            return new TiledImage(dir, w, h, tileW, tileH, rows, cols);
+            return new TiledImage(dir, w, h, tileW, tileH, rows, cols, mem);
+        }
+
+        /**
+         * @return A TiledImage made up of the rows added so far. The
+         * image grows no further; call again when more rows added.
+         * @throws RuntimeException if no complete row added, or if
+         * the last row is only partly added.
+         */
+        public TiledImage buildPartial() throws IOException {
+            if (r == rows) return build();
+            if (c != 0 || r == 0)
+                throw new RuntimeException("Bad tile numbering");
+
+            int w = tileW * (cols - 1) + lastColW;
+            int h = tileH * r;
+
+            return new TiledImage(dir, w, h, tileW, tileH, r, cols, mem);
         }
     }
 
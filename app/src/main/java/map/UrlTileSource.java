@@ -0,0 +1,103 @@
+package map;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import static loca.Utils.*;
+
+/**
+ * A tile-source that downloads images over http(s). The number of
+ * requests in flight to the same host is limited, process-wide.
+ */
+public abstract class UrlTileSource implements TileSource {
+
+    /**
+     * Max number of requests in flight to the same host, shared by
+     * all url-tile-sources in this process. May be changed at any
+     * time: requests started after the change get permits sized by
+     * the new value. */
+    public static int MAX_REQUESTS_PER_HOST = 8;
+
+    /**
+     * Request-permits per host. */
+    public/***/ static final ConcurrentHashMap<String, HostPermits> hostPermits =
+        new ConcurrentHashMap<String, HostPermits>();
+
+    /**
+     * Permits of a host, and the number of them.
+     */
+    public/***/ static class HostPermits extends Semaphore {
+        public/***/ final int max;
+
+        public/***/ HostPermits(int max) {
+            super(max, true);
+            this.max = max;
+        }
+    }
+
+    /**
+     * @return Url of image defined by req and style.
+     */
+    public/***/ abstract URL getUrl(MapRequest req, String style) throws IOException;
+
+    @Override
+    public byte[] fetch(MapRequest req, String style) throws IOException {
+        URL url = getUrl(req, style);
+        LOGGER.fine("Image-url-request: " + url);
+        return download(url);
+    }
+
+    /**
+     * Downloads content at url, waiting for a host-permit first.
+     *
+     * @return The content, as received.
+     * @throws IOException if failed to download (bad internet-conn?)
+     */
+    public/***/ static byte[] download(URL url) throws IOException {
+        Semaphore permits = getHostPermits(url.getHost());
+
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException("request: " + url);
+        }
+
+        try (InputStream in = url.openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[1 << 14];
+            int n;
+            while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+        catch (IOException e) {
+            throw new IOException("request: " + url, e);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return Permits limiting concurrent requests to host. Replaced
+     * if MAX_REQUESTS_PER_HOST changed since they were created
+     * (requests holding old permits release them to the old ones).
+     */
+    public/***/ static Semaphore getHostPermits(String host) {
+        int max = MAX_REQUESTS_PER_HOST;
+        HostPermits permits = hostPermits.get(host);
+
+        while (permits == null || permits.max != max) {
+            HostPermits fresh = new HostPermits(max);
+            boolean set = permits == null ?
+                hostPermits.putIfAbsent(host, fresh) == null :
+                hostPermits.replace(host, permits, fresh);
+            permits = set ? fresh : hostPermits.get(host);
+        }
+        return permits;
+    }
+}
@@ -65,4 +65,32 @@ public class BasicImageTests {
 
         //img.save("test_concatenateImages_2x2Layout_squares.png");
     }
+
+    @Test
+    public void getARGB_allTypes() {
+        Color c = new Color(10, 20, 30, 40);
+        int[] types = new int[]{
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_INT_ARGB_PRE };
+
+        for (int type : types) {
+            BufferedImage bi = new BufferedImage(7, 5, type);
+            bi.setRGB(3, 2, c.getRGB());
+            BasicImage img = new BasicImage(bi);
+
+            assertEquals(bi.getRGB(3, 2), img.getARGB(3, 2));
+            assertEquals(40, img.getAlpha(3, 2));
+            assertEquals(0, img.getAlpha(4, 2));
+
+            int[] row = img.getAlphaRow(2, new int[7]);
+            assertEquals(40, row[3]);
+            assertEquals(0, row[6]);
+
+            // sub-image shares data, with offset
+            BasicImage sub = img.getSubImage(2, 1, 5, 3);
+            assertEquals(bi.getRGB(3, 2), sub.getARGB(1, 1));
+            assertEquals(40, sub.getAlphaRow(1, new int[4])[1]);
+        }
+    }
 }
@@ -0,0 +1,51 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import map.*;
+
+public class BitMapTests {
+
+    @Test
+    public void nextSetPoint_acrossWords() {
+        BitMap m = new BitMap(150, 3);
+        m.set(70, 0);
+        m.set(149, 0);
+        m.set(5, 2);
+
+        assertArrayEquals(new int[]{70, 0}, m.nextSetPoint(0, 0));
+        assertArrayEquals(new int[]{149, 0}, m.nextSetPoint(71, 0));
+        assertArrayEquals(new int[]{5, 2}, m.nextSetPoint(0, 1));
+        assertNull(m.nextSetPoint(6, 2));
+
+        assertEquals(149, m.nextSetBit(71, 0));
+        assertEquals(-1, m.nextSetBit(0, 1));
+        assertEquals(3, m.cardinality());
+    }
+
+    @Test
+    public void nextClearBit_acrossWords() {
+        BitMap m = new BitMap(150, 2);
+        for (int x = 60; x < 130; x++) m.set(x, 0);
+        for (int x = 140; x < 150; x++) m.set(x, 0);
+
+        assertEquals(0, m.nextClearBit(0, 0));
+        assertEquals(130, m.nextClearBit(60, 0));
+        assertEquals(150, m.nextClearBit(140, 0));
+        assertEquals(150, m.nextClearBit(150, 0));
+        assertEquals(5, m.nextClearBit(5, 1));
+    }
+
+    @Test
+    public void snapshot_copyOnWrite() {
+        BitMap m = new BitMap(10, 10);
+        m.set(3, 4);
+        BitMap s = m.snapshot();
+
+        m.clear(3, 4);
+        assertTrue(m.isEmpty());
+        assertTrue(s.get(3, 4));
+
+        s.set(0, 0);
+        assertFalse(m.get(0, 0));
+        assertFalse(s.get(-1, 0));
+    }
+}
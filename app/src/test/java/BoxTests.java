@@ -5,6 +5,7 @@ import java.awt.Graphics2D;
 import java.awt.Color;
 import map.*;
 import java.util.Arrays;
+import java.util.LinkedList;
 
 public class BoxTests {
 
@@ -145,4 +146,62 @@ public class BoxTests {
         // double rot = 10;
         // fitFromRotation(
     }
+
+    @Test
+    public void fitRectangle_axisAligned() {
+        LinkedList<int[]> ps = boxSymbol(10, 20);
+        Box b = new Box(ps);
+        assertEquals(0, b.getRotation(), 0.0001);
+        assertEquals(9, b.getWidth(), 0.0001);
+        assertEquals(19, b.getHeight(), 0.0001);
+        assertArrayEquals(new double[]{0, 0, 9, 19}, b.getBounds(), 0.0001);
+    }
+
+    @Test
+    public void fitRectangle_rotated() {
+        // [ turned 32 degrees, between the old 5 degree steps
+        LinkedList<int[]> ps = new LinkedList<int[]>();
+        double[] u = Math2.getDirVector(32);
+        double[] n = Math2.rotate(u, -90);
+        for (int[] p : boxSymbol(40, 80)) {
+            double x = 100 + p[0]*u[0] + p[1]*n[0];
+            double y = 100 + p[0]*u[1] + p[1]*n[1];
+            int[] q = new int[]{ Math2.toInt(x), Math2.toInt(y) };
+            if (!Math2.contains(q, ps)) ps.add(q);
+        }
+        Box b = new Box(ps);
+        assertEquals(32, b.getRotation(), 1);
+        assertEquals(39, b.getWidth(), 1.5);
+        assertEquals(79, b.getHeight(), 1.5);
+
+        int[][] hull = Box.convexHull(ps);
+        for (int i = 0; i < hull[0].length; i++) {
+            assertTrue(Math2.contains(new int[]{ hull[0][i], hull[1][i] }, ps));
+        }
+    }
+
+    @Test
+    public void getOuterPoints() {
+        LinkedList<int[]> ps = new LinkedList<int[]>();
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 3; x++) ps.add(new int[]{x, y});
+        }
+        LinkedList<int[]> outer = Box.getOuterPoints(ps);
+        assertEquals(8, outer.size());
+        assertFalse(Math2.contains(new int[]{1, 1}, outer));
+    }
+
+    /**
+     * @return Points of a [ with size w x h at [0,0].
+     */
+    private static LinkedList<int[]> boxSymbol(int w, int h) {
+        LinkedList<int[]> ps = new LinkedList<int[]>();
+        int t = Math.max(2, w / 4);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (x < t || y < t || y >= h - t) ps.add(new int[]{x, y});
+            }
+        }
+        return ps;
+    }
 }
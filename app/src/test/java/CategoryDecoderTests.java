@@ -44,4 +44,46 @@ public class CategoryDecoderTests {
     //     System.out.println(labelType);
     //     //assertTrue(labelType.equals("country_label : country"));
     // }
+
+    @Test
+    public void colorTable() {
+        DecoderRegistry reg = new DecoderRegistry(new int[0],
+            new Category[]{ Category.COUNTRY, Category.TERRITORY, Category.WATERBODY });
+
+        assertEquals(0, CategoryDecoder.colorCode(0, 0, 0));
+        assertEquals(124, CategoryDecoder.colorCode(255, 255, 255));
+        assertEquals(1*25 + 2*5 + 3, CategoryDecoder.colorCode(60, 110, 160));
+
+        assertEquals(Category.COUNTRY, reg.getColorCategory(0));
+        assertEquals(Category.TERRITORY, reg.getColorCategory(50));
+        assertEquals(Category.WATERBODY, reg.getColorCategory(100));
+        assertNull(reg.getColorCategory(124));
+    }
+
+    @Test
+    public void averageAndVote() {
+        DecoderRegistry reg = new DecoderRegistry(new int[0],
+            new Category[]{ Category.COUNTRY, Category.TERRITORY, Category.WATERBODY });
+        int black = 0xff000000;
+        int white = 0xffffffff;
+
+        // average is grey (code 62)
+        LabelStats st = stats(black, black, white, white);
+        assertEquals(Category.WATERBODY, CategoryDecoder.average(st, reg));
+        assertArrayEquals(new int[]{0, 0, 3, 0}, st.getBounds());
+
+        st = stats(black, black, black, white, white);
+        assertEquals(Category.COUNTRY, CategoryDecoder.vote(st.getHistogram(), reg));
+        st = stats(black, white, white);
+        assertNull(CategoryDecoder.vote(st.getHistogram(), reg));
+    }
+
+    /**
+     * @return Stats of pixels [i,0] with color argbs[i].
+     */
+    private static LabelStats stats(int... argbs) {
+        LabelStats st = new LabelStats();
+        for (int i = 0; i < argbs.length; i++) st.add(i, 0, argbs[i]);
+        return st;
+    }
 }
@@ -0,0 +1,105 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import map.*;
+import java.util.LinkedList;
+import java.util.Random;
+
+public class ComponentLabelingTests {
+
+    public static BitMap toMap(String... rows) {
+        BitMap map = new BitMap(rows[0].length(), rows.length);
+        for (int y = 0; y < rows.length; y++)
+            for (int x = 0; x < rows[y].length(); x++)
+                if (rows[y].charAt(x) == '#') map.set(x, y);
+        return map;
+    }
+
+    @Test
+    public void components() {
+        ComponentLabeling cl = new ComponentLabeling(toMap(
+            "......",
+            ".#..#.",
+            ".#.##.",
+            ".####.",
+            "......",
+            "#....#"));
+
+        // U-shape merges late, ids in order of first point
+        assertEquals(3, cl.getNoComponents());
+        assertEquals(0, cl.getId(1, 1));
+        assertEquals(0, cl.getId(4, 1));
+        assertEquals(1, cl.getId(0, 5));
+        assertEquals(2, cl.getId(5, 5));
+        assertEquals(-1, cl.getId(0, 0));
+        assertEquals(-1, cl.getId(-1, 0));
+
+        assertEquals(9, cl.getSize(0));
+        assertArrayEquals(new int[]{1, 1, 4, 3}, cl.getBounds(0));
+        assertFalse(cl.touchesEdge(0));
+        assertTrue(cl.touchesEdge(1));
+
+        LinkedList<int[]> ps = cl.getPoints(0);
+        assertEquals(9, ps.size());
+        assertArrayEquals(new int[]{1, 1}, ps.getFirst());
+        assertArrayEquals(new int[]{4, 3}, ps.getLast());
+    }
+
+    @Test
+    public void spiral() {
+        ComponentLabeling cl = new ComponentLabeling(toMap(
+            "#######",
+            "......#",
+            "#####.#",
+            "#...#.#",
+            "#.#.#.#",
+            "#.#...#",
+            "#.#####"));
+
+        assertEquals(2, cl.getNoComponents());
+        assertEquals(cl.getId(0, 0), cl.getId(2, 4));
+        assertEquals(1, cl.getId(0, 2));
+    }
+
+    @Test
+    public void random_sameAsFloodFill() {
+        Random rnd = new Random(3);
+        BitMap map = new BitMap(150, 60);
+        for (int y = 0; y < 60; y++)
+            for (int x = 0; x < 150; x++)
+                if (rnd.nextInt(100) < 45) map.set(x, y);
+
+        ComponentLabeling cl = new ComponentLabeling(map);
+
+        // flood-fill from first point of every component, row by row
+        int[][] ref = new int[60][150];
+        int n = 0;
+        for (int y = 0; y < 60; y++) {
+            for (int x = 0; x < 150; x++) {
+                if (!map.get(x, y) || ref[y][x] != 0) continue;
+                n++;
+                LinkedList<int[]> q = new LinkedList<int[]>();
+                q.add(new int[]{x, y});
+                ref[y][x] = n;
+                int size = 0;
+                while (!q.isEmpty()) {
+                    int[] p = q.poll();
+                    size++;
+                    assertEquals(n-1, cl.getId(p[0], p[1]));
+                    int[][] ns = {{p[0]-1, p[1]}, {p[0]+1, p[1]}, {p[0], p[1]-1}, {p[0], p[1]+1}};
+                    for (int[] nb : ns) {
+                        if (map.get(nb[0], nb[1]) && ref[nb[1]][nb[0]] == 0) {
+                            ref[nb[1]][nb[0]] = n;
+                            q.add(nb);
+                        }
+                    }
+                }
+                assertEquals(size, cl.getSize(n-1));
+                assertArrayEquals(new int[]{x, y}, cl.getPoints(n-1).getFirst());
+            }
+        }
+        assertEquals(n, cl.getNoComponents());
+        for (int y = 0; y < 60; y++)
+            for (int x = 0; x < 150; x++)
+                if (!map.get(x, y)) assertEquals(-1, cl.getId(x, y));
+    }
+}
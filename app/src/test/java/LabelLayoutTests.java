@@ -121,4 +121,25 @@ public class LabelLayoutTests {
         assertEquals(11, bs[2]);
         assertEquals(12, bs[3]);
     }
+
+    @Test
+    public void layoutIndex() {
+        LayoutIndex index = new LayoutIndex();
+        assertTrue(index.add(lay));
+        assertFalse(index.add(lay.addOffset(0, 0)));
+
+        // corner moved to neighbor grid-cell, within delta
+        assertFalse(index.add(lay.addOffset(-4, 5)));
+        assertTrue(index.add(lay.addOffset(11, 0)));
+        assertTrue(index.add(lay.addOffset(-30, -30)));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void getBounds_cached() {
+        double[] bs = lay.getBounds();
+        bs[0] = 100;
+        assertEquals(-1, lay.getBounds()[0], 1e-9);
+        assertEquals(-1 + 5, lay.addOffset(5, 0).getBounds()[0], 1e-9);
+    }
 }
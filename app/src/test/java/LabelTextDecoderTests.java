@@ -2,7 +2,11 @@ import org.junit.*;
 import static org.junit.Assert.*;
 import map.*;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.LinkedList;
+import java.awt.Color;
+import java.awt.Graphics2D;
 
 public class LabelTextDecoderTests {
     //MapRequest.ViewAndImgs vis = MapRequest.sweden();
@@ -72,4 +76,131 @@ public class LabelTextDecoderTests {
     //     }
     //     System.out.println("Count: " + LabelTextDecoder.mappings.length);
     // }
+
+    @Test
+    public void getSamplePoints_blockMids() {
+        Box[] bs = new Box[]{
+            new Box(new double[]{10, 10}, new double[]{22, 10}, 20),
+            new Box(new double[]{30.3, 41.7}, new double[]{38.1, 47.2}, 17.5),
+            new Box(new double[]{50, 50}, new double[]{44, 61}, 9) };
+
+        for (Box b : bs) {
+            Box[] blocks = b.split(LabelTextDecoder.CODE_BOX_ROWS, LabelTextDecoder.CODE_BOX_COLS);
+            int[] ps = LabelTextDecoder.getSamplePoints(b, new int[2 * blocks.length]);
+
+            for (int i = 0; i < blocks.length; i++) {
+                int[] mid = Math2.toInt(blocks[i].getMid());
+                assertEquals(mid[0], ps[2*i]);
+                assertEquals(mid[1], ps[2*i+1]);
+            }
+        }
+    }
+
+    @Test
+    public void decode_bits() throws Exception {
+        DecoderRegistry old = DecoderRegistry.swap(letterRegistry());
+
+        try {
+            Box b = new Box(new double[]{0, 0}, new double[]{8, 0}, 16);
+            BasicImage img = new BasicImage(8, 16);
+            Graphics2D g = img.createGraphics();
+            g.setColor(Color.BLACK);
+            int code = 0b10100110;
+            for (int i = 0; i < 8; i++) {
+                if ((code & (1 << i)) != 0) g.fillRect((i % 2) * 4, (i / 2) * 4, 4, 4);
+            }
+            assertEquals((char) ('A' + code), LabelTextDecoder.decode(b, img));
+
+            LinkedList<Box> row = new LinkedList<Box>();
+            row.add(b);
+            LabelLayout lay = new LabelLayout(row);
+            lay.addRowLast(new LinkedList<Box>(row));
+            String s = "" + (char) ('A' + code);
+            assertEquals(s + " " + s, LabelTextDecoder.decode(lay, img));
+        }
+        finally {
+            DecoderRegistry.swap(old);
+        }
+    }
+
+    @Test
+    public void batch() throws Exception {
+        DecoderRegistry old = DecoderRegistry.swap(letterRegistry());
+
+        Path dir = Files.createTempDirectory("test_LabelTextDecoderTests");
+        try {
+            // one glyph per 16x16 tile, codes 1 2 3 4
+            BasicImage img = new BasicImage(32, 32);
+            Graphics2D g = img.createGraphics();
+            g.setColor(Color.BLACK);
+            LinkedList<LabelLayout> lays = new LinkedList<LabelLayout>();
+            for (int t = 0; t < 4; t++) {
+                int x0 = (t % 2) * 16;
+                int y0 = (t / 2) * 16;
+                for (int i = 0; i < 8; i++) {
+                    if (((t+1) & (1 << i)) != 0) g.fillRect(x0 + (i % 2) * 4, y0 + (i / 2) * 4, 4, 4);
+                }
+                LinkedList<Box> row = new LinkedList<Box>();
+                row.add(new Box(new double[]{x0, y0}, new double[]{x0 + 8, y0}, 16));
+                lays.addFirst(new LabelLayout(row));
+            }
+            LinkedList<Box> outside = new LinkedList<Box>();
+            outside.add(new Box(new double[]{28, 0}, new double[]{36, 0}, 16));
+            lays.add(new LabelLayout(outside));
+
+            TiledImage.Builder b = new TiledImage.Builder(2, 2, dir);
+            for (int t = 0; t < 4; t++) {
+                int x0 = (t % 2) * 16;
+                int y0 = (t / 2) * 16;
+                b.add(img.getSubImage(new int[]{x0, y0, x0 + 15, y0 + 15}));
+            }
+            TiledImage cimg = b.build();
+
+            LabelTextDecoder.Batch batch = new LabelTextDecoder.Batch(lays, DecoderRegistry.get());
+            batch.read(cimg, false);
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals("" + (char) ('A' + 4 - i), batch.getText(i));
+                assertEquals(LabelTextDecoder.decode(lays.get(i), cimg), batch.getText(i));
+            }
+            try {
+                batch.getText(4);
+                fail();
+            }
+            catch (UnknownCharacterException e) {}
+            cimg.delete();
+        }
+        finally {
+            DecoderRegistry.swap(old);
+        }
+    }
+
+    @Test
+    public void registry_swap() throws Exception {
+        DecoderRegistry reg = letterRegistry();
+        DecoderRegistry old = DecoderRegistry.swap(reg);
+        try {
+            assertSame(reg, DecoderRegistry.get());
+            assertEquals('A' + 3, DecoderRegistry.get().getCodePoint(3));
+
+            // loaded once, kept until swapped
+            DecoderRegistry.swap(null);
+            DecoderRegistry loaded = DecoderRegistry.get();
+            assertSame(loaded, DecoderRegistry.get());
+            assertTrue(loaded.getNoCodes() > 0);
+            assertTrue(loaded.getNoCategories() > 0);
+        }
+        finally {
+            DecoderRegistry.swap(old);
+        }
+    }
+
+    /**
+     * @return Registry where code i is letter 'A'+i, no categories.
+     */
+    public static DecoderRegistry letterRegistry() {
+        int[] cps = new int[256];
+        for (int i = 0; i < 256; i++) cps[i] = 'A' + i;
+        return new DecoderRegistry(cps, new Category[0]);
+    }
 }
@@ -2,6 +2,9 @@ import org.junit.*;
 import static org.junit.Assert.*;
 import map.*;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 
 public class MapObjectsTests {
     // MapRequest.ViewAndImgs vis = MapRequest.lidingo();
@@ -19,4 +22,31 @@ public class MapObjectsTests {
     //     vis.imgs[1].save("test_MapObjects_construction_code.png");
     //     vis.imgs[2].save("test_MapObjects_construction_box.png");
     // }
+
+    @Test
+    public void mergeLabels() {
+        List<Label> labs = new ArrayList<Label>();
+        labs.add(new Label("A", Category.COUNTRY, layout(0)));
+        labs.add(new Label("B", Category.COUNTRY, layout(100)));
+        labs.add(new Label("A", Category.WATERBODY, layout(200)));
+        labs.add(new Label("A", Category.COUNTRY, layout(300)));
+        labs.add(new Label("A", Category.COUNTRY, layout(300))); //same layout
+
+        List<MapObject> mobs = MapObjects.mergeLabels(labs);
+
+        assertEquals(3, mobs.size());
+        assertEquals("A", mobs.get(0).getName());
+        assertEquals(Category.COUNTRY, mobs.get(0).getCategory());
+        assertEquals(2, mobs.get(0).getNoLayouts());
+        assertEquals(Category.WATERBODY, mobs.get(2).getCategory());
+    }
+
+    /**
+     * @return One-box layout at [x,0].
+     */
+    public static LabelLayout layout(double x) {
+        LinkedList<Box> row = new LinkedList<Box>();
+        row.add(new Box(new double[]{x, 0}, new double[]{x+10, 0}, 20));
+        return new LabelLayout(row);
+    }
 }
@@ -2,14 +2,172 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import java.io.IOException;
 import map.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
 
 public class MapRequestTests {
 
     // boolean highQ = true;
     Language lang = Language.EN;
 
+    @Test
+    public void fetch3_concurrentSameAsSequential() throws IOException {
+        CountingTileSource backing = new CountingTileSource(15);
+        StandInTileServer server = new StandInTileServer(backing, 0);
+        TileSource oldSource = MapRequest.SOURCE;
+        ResponseCache oldCache = MapRequest.CACHE;
+        boolean oldConcurrent = MapRequest.CONCURRENT_FETCH;
+        boolean oldSparse = MapRequest.SPARSE_CODE_FETCH;
+        int oldMax = UrlTileSource.MAX_REQUESTS_PER_HOST;
+        Path dir = Files.createTempDirectory("test_MapRequestTests");
+        TiledImage[] seq = null;
+        TiledImage[] con = null;
+
+        try {
+            MapRequest.SOURCE = server.getSource();
+            MapRequest.CACHE = null;
+            MapRequest.SPARSE_CODE_FETCH = false;
+            UrlTileSource.MAX_REQUESTS_PER_HOST = 3;
+
+            MapImageView v = new MapImageView(17.6, 59.8, 1200, 700, 10, false);
+            MapRequest.CONCURRENT_FETCH = false;
+            seq = new MapRequest(v, dir.resolve("seq"), Language.EN).fetch3();
+            assertEquals(1, backing.getMaxInFlight());
+
+            MapRequest.CONCURRENT_FETCH = true;
+            con = new MapRequest(v, dir.resolve("con"), Language.EN).fetch3();
+
+            assertEquals(3 * 3 * 2 * 2, server.getNoServed());
+            assertTrue(backing.getMaxInFlight() > 1);
+            assertTrue(backing.getMaxInFlight() <= 3);
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals(seq[i].getWidth(), con[i].getWidth());
+                assertEquals(seq[i].getHeight(), con[i].getHeight());
+                for (int y = 0; y < seq[i].getHeight(); y++) {
+                    for (int x = 0; x < seq[i].getWidth(); x++) {
+                        assertEquals(seq[i].getARGB(x, y), con[i].getARGB(x, y));
+                    }
+                }
+            }
+        }
+        finally {
+            MapRequest.SOURCE = oldSource;
+            MapRequest.CACHE = oldCache;
+            MapRequest.CONCURRENT_FETCH = oldConcurrent;
+            MapRequest.SPARSE_CODE_FETCH = oldSparse;
+            UrlTileSource.MAX_REQUESTS_PER_HOST = oldMax;
+            UrlTileSource.hostPermits.clear();
+            server.stop();
+            for (TiledImage[] imgs : new TiledImage[][]{ seq, con }) {
+                if (imgs != null) for (TiledImage img : imgs) img.delete();
+            }
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    @Test
+    public void fetch3_changedHostLimit() throws IOException {
+        CountingTileSource backing2 = new CountingTileSource(15);
+        CountingTileSource backing4 = new CountingTileSource(15);
+        StandInTileServer server2 = new StandInTileServer(backing2, 0);
+        StandInTileServer server4 = new StandInTileServer(backing4, 0);
+        TileSource oldSource = MapRequest.SOURCE;
+        ResponseCache oldCache = MapRequest.CACHE;
+        boolean oldConcurrent = MapRequest.CONCURRENT_FETCH;
+        int oldMax = UrlTileSource.MAX_REQUESTS_PER_HOST;
+        Path dir = Files.createTempDirectory("test_MapRequestTests");
+        TiledImage[] imgs2 = null;
+        TiledImage[] imgs4 = null;
+
+        try {
+            MapRequest.CACHE = null;
+            MapRequest.CONCURRENT_FETCH = true;
+            MapImageView v = new MapImageView(17.6, 59.8, 1200, 700, 10, false);
+
+            // both servers on 127.0.0.1, so same host-permits
+            MapRequest.SOURCE = server2.getSource();
+            UrlTileSource.MAX_REQUESTS_PER_HOST = 2;
+            imgs2 = new MapRequest(v, dir.resolve("2"), Language.EN).fetch3();
+            assertEquals(2, backing2.getMaxInFlight());
+
+            MapRequest.SOURCE = server4.getSource();
+            UrlTileSource.MAX_REQUESTS_PER_HOST = 4;
+            imgs4 = new MapRequest(v, dir.resolve("4"), Language.EN).fetch3();
+            assertTrue(backing4.getMaxInFlight() > 2);
+            assertTrue(backing4.getMaxInFlight() <= 4);
+        }
+        finally {
+            MapRequest.SOURCE = oldSource;
+            MapRequest.CACHE = oldCache;
+            MapRequest.CONCURRENT_FETCH = oldConcurrent;
+            UrlTileSource.MAX_REQUESTS_PER_HOST = oldMax;
+            server2.stop();
+            server4.stop();
+            for (TiledImage[] imgs : new TiledImage[][]{ imgs2, imgs4 }) {
+                if (imgs != null) for (TiledImage img : imgs) img.delete();
+            }
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    /**
+     * Serves images colored by request and style (so every tile is
+     * distinct), taking some time, and counts how many are served
+     * at the same time.
+     */
+    public static class CountingTileSource implements TileSource {
+        final long delay;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        public CountingTileSource(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public byte[] fetch(MapRequest req, String style) throws IOException {
+            int n = inFlight.incrementAndGet();
+            int max;
+            while (n > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, n));
+
+            try {
+                Thread.sleep(this.delay);
+
+                int f = req.x2 ? 2 : 1;
+                BasicImage img = new BasicImage(req.width * f, req.height * f);
+                Graphics2D g = img.createGraphics();
+                g.setColor(new Color((req.lon + "," + req.lat + "," + style).hashCode() | 0xff000000, true));
+                g.fillRect(0, 0, img.getWidth(), img.getHeight() / 2);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(img.img, "png", out);
+                return out.toByteArray();
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String getId() {
+            return "counting";
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight.get();
+        }
+    }
+
     @Test
     public void fetcher() {
         // fetch3Helper(MapImageView.world(), "world");
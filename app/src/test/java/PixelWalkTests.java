@@ -187,4 +187,37 @@ public class PixelWalkTests {
 
         assertEquals(null, pw.next());
     }
+
+    @Test
+    public void cursor_shallow() {
+        PixelWalk pw = new PixelWalk(0, 0, 6, 2);
+        int[][] expected = new int[][]{
+            {0,0}, {1,0}, {2,1}, {3,1}, {4,1}, {5,2}, {6,2} };
+
+        for (int[] e : expected) {
+            assertTrue(pw.hasNext());
+            pw.advance();
+            assertEquals(e[0], pw.x());
+            assertEquals(e[1], pw.y());
+        }
+        assertFalse(pw.hasNext());
+        assertNull(pw.next());
+
+        pw = new PixelWalk(2, 2, 2, 2);
+        assertArrayEquals(new int[]{2, 2}, pw.next());
+        assertNull(pw.next());
+    }
+
+    @Test
+    public void firstSetPoint() {
+        BitMap m = new BitMap(100, 10);
+        m.set(70, 3);
+        m.set(5, 5);
+
+        assertArrayEquals(new int[]{70, 3}, PixelWalk.firstSetPoint(m, -5, 3, 99, 3));
+        assertNull(PixelWalk.firstSetPoint(m, 0, 3, 69, 3));
+        assertNull(PixelWalk.firstSetPoint(m, 0, 20, 99, 20));
+        assertArrayEquals(new int[]{5, 5}, PixelWalk.firstSetPoint(m, 0, 0, 10, 10));
+        assertArrayEquals(new int[]{70, 3}, PixelWalk.firstSetPoint(m, 99, 3, 0, 3));
+    }
 }
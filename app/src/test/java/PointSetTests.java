@@ -0,0 +1,62 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import map.*;
+import java.util.LinkedList;
+
+public class PointSetTests {
+
+    @Test
+    public void addAndContains() {
+        PointSet ps = new PointSet();
+        for (int y = -20; y < 20; y++) {
+            for (int x = -20; x < 20; x++) assertTrue(ps.add(x, y));
+        }
+        assertFalse(ps.add(0, 0));
+        assertEquals(1600, ps.size());
+        assertTrue(ps.contains(-20, 19));
+        assertFalse(ps.contains(20, 0));
+        assertArrayEquals(new int[]{-20, -20, 19, 19}, ps.getBounds());
+        assertArrayEquals(new double[]{-0.5, -0.5}, ps.mean(), 0);
+
+        // order added
+        assertEquals(-20, ps.getX(0));
+        assertEquals(-19, ps.getX(1));
+        assertEquals(-20, ps.getY(1));
+    }
+
+    @Test
+    public void clear() {
+        PointSet ps = new PointSet(1000);
+        ps.add(3, 4);
+        ps.add(5, 6);
+        ps.clear();
+        assertTrue(ps.isEmpty());
+        assertFalse(ps.contains(3, 4));
+        assertTrue(ps.add(5, 6));
+        assertEquals(5, ps.getX(0));
+    }
+
+    @Test
+    public void pool() {
+        PointSet ps = PointSet.acquire();
+        ps.add(1, 1);
+        PointSet.release(ps);
+
+        PointSet again = PointSet.acquire();
+        assertSame(ps, again);
+        assertTrue(again.isEmpty());
+        PointSet.release(again);
+    }
+
+    @Test
+    public void list() {
+        LinkedList<int[]> ps = new LinkedList<int[]>();
+        ps.add(new int[]{1, 2});
+        ps.add(new int[]{3, 4});
+        ps.add(new int[]{1, 2});
+
+        LinkedList<int[]> back = new PointSet(ps).toList();
+        assertEquals(2, back.size());
+        assertArrayEquals(new int[]{3, 4}, back.getLast());
+    }
+}
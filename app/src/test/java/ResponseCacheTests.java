@@ -0,0 +1,110 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import map.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.IOException;
+
+public class ResponseCacheTests {
+
+    @Test
+    public void putGet_hitsMisses() throws IOException {
+        Path dir = Files.createTempDirectory("test_ResponseCacheTests");
+        ResponseCache cache = new ResponseCache(dir, 1000);
+
+        try {
+            assertEquals(null, cache.get("a"));
+            cache.put("a", new byte[]{1, 2, 3});
+            byte[] data = cache.get("a");
+            assertEquals(3, data.length);
+            assertEquals(2, data[1]);
+
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        }
+        finally {
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        Path dir = Files.createTempDirectory("test_ResponseCacheTests");
+        ResponseCache cache = new ResponseCache(dir, 250);
+
+        try {
+            cache.put("a", new byte[100]);
+            dir.resolve("a.png").toFile().setLastModified(1000);
+            cache.put("b", new byte[100]);
+            cache.put("c", new byte[100]);
+
+            assertEquals(null, cache.get("a"));
+            assertTrue(cache.get("b") != null);
+            assertTrue(cache.get("c") != null);
+            assertEquals(1, cache.getEvictions());
+        }
+        finally {
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    @Test
+    public void fetchRaw_cachesOnlyReadable() throws IOException {
+        Path dir = Files.createTempDirectory("test_ResponseCacheTests");
+        TileSource oldSource = MapRequest.SOURCE;
+        ResponseCache oldCache = MapRequest.CACHE;
+
+        try {
+            ResponseCache cache = new ResponseCache(dir, 1 << 20);
+            MapRequest.CACHE = cache;
+            MapImageView v = new MapImageView(17.6, 59.8, 30, 20, 10, false);
+            MapRequest req = new MapRequest(v, dir, Language.EN);
+            String key = ResponseCache.key(req, "style", "blank");
+
+            // e.g an error-page served with 200
+            MapRequest.SOURCE = new TileSource() {
+                    @Override
+                    public byte[] fetch(MapRequest r, String style) {
+                        return "<html>".getBytes();
+                    }
+
+                    @Override
+                    public String getId() {
+                        return "html";
+                    }
+                };
+            try {
+                req.fetchRaw("style");
+                fail();
+            }
+            catch (IOException e) {}
+            assertEquals(null, cache.get(ResponseCache.key(req, "style", "html")));
+
+            // unreadable entry is replaced
+            cache.put(key, "<html>".getBytes());
+            MapRequest.SOURCE = new StandInTileServer.BlankTileSource();
+            assertEquals(30, req.fetchRaw("style").getWidth());
+            assertEquals(30, MapRequest.decode(cache.get(key)).getWidth());
+
+            // blank response not served for another source
+            MapRequest.SOURCE = new MapRequestTests.CountingTileSource(0);
+            assertTrue(req.fetchRaw("style").getColor(new int[]{0, 0}).getAlpha() > 0);
+        }
+        finally {
+            MapRequest.SOURCE = oldSource;
+            MapRequest.CACHE = oldCache;
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    @Test
+    public void key() {
+        MapImageView v = new MapImageView(17.6, 59.8, 300, 200, 10, false);
+        MapRequest r0 = new MapRequest(v, "test_ResponseCacheTests", Language.EN);
+        MapRequest r1 = new MapRequest(v, "other", Language.LOCAL);
+
+        assertEquals(ResponseCache.key(r0, "style", "mapbox"), ResponseCache.key(r1, "style", "mapbox"));
+        assertFalse(ResponseCache.key(r0, "style", "mapbox").equals(ResponseCache.key(r0, "other", "mapbox")));
+        assertFalse(ResponseCache.key(r0, "style", "mapbox").equals(ResponseCache.key(r0, "style", "blank")));
+    }
+}
@@ -0,0 +1,221 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import map.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.LinkedList;
+
+public class StreamingAnalysisTests {
+
+    @Test
+    public void rowsFetched_sameAsGetLayouts() throws IOException {
+        BasicImage img = syntheticLabels();
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int side = 512;
+        int rows = (h + side - 1) / side;
+        int cols = (w + side - 1) / side;
+        MapImageView v = new MapImageView(17.6, 59.8, w, h, 10, false);
+
+        Path dir = Files.createTempDirectory("test_StreamingAnalysisTests");
+        TiledImage cimg = null;
+        TiledImage bimg = null;
+        try {
+            TiledImage.Builder cb = new TiledImage.Builder(rows, cols, dir.resolve("code"), Long.MAX_VALUE);
+            TiledImage.Builder bb = new TiledImage.Builder(rows, cols, dir.resolve("box"), Long.MAX_VALUE);
+            StreamingAnalysis sa = new StreamingAnalysis(v, w, h);
+
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    int tw = Math.min(side, w - c*side);
+                    int th = Math.min(side, h - r*side);
+                    cb.add(new BasicImage(tw, th));
+                    bb.add(img.getSubImage(c*side, r*side, c*side + tw-1, r*side + th-1));
+                }
+                sa.rowsFetched(cb.buildPartial(), bb.buildPartial());
+            }
+            cimg = cb.build();
+            bimg = bb.build();
+
+            LinkedList<LabelLayout> exp = LabelLayoutIterator.getLayouts(bimg, v);
+            LinkedList<LabelLayout> act = sa.lays.getLayouts();
+
+            assertTrue(sa.windows.isEmpty());
+            assertEquals(exp.size(), act.size());
+            for (int i = 0; i < exp.size(); i++) {
+                assertArrayEquals(exp.get(i).getBounds(), act.get(i).getBounds(), 0);
+            }
+            // no duplicates where windows overlap
+            for (int i = 0; i < act.size(); i++) {
+                for (int j = i+1; j < act.size(); j++) {
+                    assertFalse(act.get(i).same(act.get(j)));
+                }
+            }
+            // labels across window-edges found whole
+            for (LabelLayout lay : act) {
+                assertEquals(5, lay.getNoBoxes());
+            }
+            assertEquals(NO_LABELS, act.size());
+        }
+        finally {
+            if (cimg != null) cimg.delete();
+            if (bimg != null) bimg.delete();
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    @Test
+    public void fetch3_rowListener() throws IOException {
+        StandInTileServer server = new StandInTileServer(new MapRequestTests.CountingTileSource(0), 0);
+        TileSource oldSource = MapRequest.SOURCE;
+        ResponseCache oldCache = MapRequest.CACHE;
+        boolean oldSparse = MapRequest.SPARSE_CODE_FETCH;
+        Path dir = Files.createTempDirectory("test_StreamingAnalysisTests");
+        TiledImage[] piped = null;
+        TiledImage[] whole = null;
+
+        try {
+            MapRequest.SOURCE = server.getSource();
+            MapRequest.CACHE = null;
+            MapRequest.SPARSE_CODE_FETCH = false;
+
+            MapImageView v = new MapImageView(17.6, 59.8, 1200, 700, 10, false);
+            final LinkedList<Integer> heights = new LinkedList<Integer>();
+            MapRequest req = new MapRequest(v, dir.resolve("piped"), Language.EN);
+            piped = req.fetch3(
+                new MapRequest.RowListener() {
+                    @Override
+                    public void rowsFetched(TiledImage cimg, TiledImage bimg) {
+                        assertEquals(cimg.getHeight(), bimg.getHeight());
+                        heights.add(bimg.getHeight());
+                    }
+                });
+            whole = new MapRequest(v, dir.resolve("whole"), Language.EN).fetch3();
+
+            assertEquals(req.split().length, heights.size());
+            assertTrue(heights.size() > 1);
+            for (int i = 1; i < heights.size(); i++) {
+                assertTrue(heights.get(i) > heights.get(i-1));
+            }
+            assertEquals(whole[2].getHeight(), (int) heights.getLast());
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals(whole[i].getWidth(), piped[i].getWidth());
+                assertEquals(whole[i].getHeight(), piped[i].getHeight());
+                for (int y = 0; y < whole[i].getHeight(); y++) {
+                    for (int x = 0; x < whole[i].getWidth(); x++) {
+                        assertEquals(whole[i].getARGB(x, y), piped[i].getARGB(x, y));
+                    }
+                }
+            }
+        }
+        finally {
+            MapRequest.SOURCE = oldSource;
+            MapRequest.CACHE = oldCache;
+            MapRequest.SPARSE_CODE_FETCH = oldSparse;
+            server.stop();
+            for (TiledImage[] imgs : new TiledImage[][]{ piped, whole }) {
+                if (imgs != null) for (TiledImage img : imgs) img.delete();
+            }
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    @Test
+    public void fetch3_rowListenerSparse() throws IOException {
+        MapImageView v = new MapImageView(17.6, 59.8, 1200, 700, 10, false);
+        Path dir = Files.createTempDirectory("test_StreamingAnalysisTests");
+        final MapRequest req = new MapRequest(v, dir, Language.EN);
+        final MapRequest[][] reqs = req.split();
+
+        // box-points only in top-left tile
+        StandInTileServer server = new StandInTileServer(new TileSource() {
+                TileSource blank = new StandInTileServer.BlankTileSource();
+                TileSource opaque = new MapRequestTests.CountingTileSource(0);
+
+                @Override
+                public byte[] fetch(MapRequest r, String style) throws IOException {
+                    boolean topLeft = r.lon == reqs[0][0].lon && r.lat == reqs[0][0].lat;
+                    if (topLeft && style.equals(MapRequest.BOX_STYLE_ID_EN))
+                        return opaque.fetch(r, style);
+                    return blank.fetch(r, style);
+                }
+
+                @Override
+                public String getId() {
+                    return "top-left";
+                }
+            }, 0);
+        TileSource oldSource = MapRequest.SOURCE;
+        ResponseCache oldCache = MapRequest.CACHE;
+        boolean oldSparse = MapRequest.SPARSE_CODE_FETCH;
+        TiledImage[] imgs = null;
+
+        try {
+            MapRequest.SOURCE = server.getSource();
+            MapRequest.CACHE = null;
+            MapRequest.SPARSE_CODE_FETCH = true;
+
+            final LinkedList<Integer> heights = new LinkedList<Integer>();
+            imgs = req.fetch3(new MapRequest.RowListener() {
+                    @Override
+                    public void rowsFetched(TiledImage cimg, TiledImage bimg) {
+                        assertEquals(cimg.getHeight(), bimg.getHeight());
+                        heights.add(bimg.getHeight());
+                    }
+                });
+
+            int rows = reqs.length;
+            int cols = reqs[0].length;
+            assertTrue(rows > 1 && cols > 2);
+            assertEquals(rows, heights.size());
+            assertEquals(700, imgs[1].getHeight());
+
+            // code-tiles only at and next to the box-points
+            int code = Math.min(rows, 2) * Math.min(cols, 2);
+            assertEquals(2 * rows * cols + code, server.getNoServed());
+        }
+        finally {
+            MapRequest.SOURCE = oldSource;
+            MapRequest.CACHE = oldCache;
+            MapRequest.SPARSE_CODE_FETCH = oldSparse;
+            server.stop();
+            if (imgs != null) for (TiledImage img : imgs) img.delete();
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    /**
+     * Number of labels in syntheticLabels(). */
+    static final int NO_LABELS = 7 * 8 + 6;
+
+    /**
+     * @return 2600x2300 box-image with labels of 5 box-symbols: a
+     * grid, plus labels across x=1000, x=2000, y=1000 and y=2000.
+     */
+    static BasicImage syntheticLabels() {
+        BasicImage img = new BasicImage(2600, 2300);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.BLACK);
+        for (int y = 80; y < 2300; y += 300) {
+            for (int x = 30; x < 2600; x += 400) drawLabel(g, x, y);
+        }
+        drawLabel(g, 970, 150);
+        drawLabel(g, 1970, 150);
+        drawLabel(g, 600, 990);
+        drawLabel(g, 600, 1990);
+        drawLabel(g, 970, 990);
+        drawLabel(g, 1970, 1990);
+        return img;
+    }
+
+    /**
+     * Draws a label of 5 box-symbols from x,y.
+     */
+    static void drawLabel(Graphics2D g, int x, int y) {
+        for (int i = 0; i < 5; i++) LabelLayoutIteratorTests.drawBoxSymbol(g, x + i*14, y);
+    }
+}
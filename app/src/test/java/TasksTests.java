@@ -0,0 +1,81 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import map.*;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+public class TasksTests {
+
+    @Test
+    public void runAll_sharedPool() throws IOException {
+        ExecutorService old = Tasks.EXECUTOR;
+        int oldThreads = Tasks.THREADS;
+        try {
+            Tasks.EXECUTOR = null;
+            Tasks.THREADS = 2;
+            List<String> r0 = Tasks.runAll(threadNames(4), true);
+            ExecutorService pool = Tasks.EXECUTOR;
+            List<String> r1 = Tasks.runAll(threadNames(4), true);
+
+            assertNotNull(pool);
+            assertSame(pool, Tasks.EXECUTOR);
+            assertFalse(pool.isShutdown());
+            assertEquals(4, r0.size());
+            assertEquals(4, r1.size());
+            for (String name : r1) assertEquals("map-task", name);
+            Tasks.EXECUTOR.shutdownNow();
+        }
+        finally {
+            Tasks.EXECUTOR = old;
+            Tasks.THREADS = oldThreads;
+        }
+    }
+
+    @Test
+    public void runAll_nested() throws IOException {
+        ExecutorService old = Tasks.EXECUTOR;
+        int oldThreads = Tasks.THREADS;
+        try {
+            Tasks.EXECUTOR = null;
+            Tasks.THREADS = 2;
+            List<Callable<Integer>> tasks = new LinkedList<Callable<Integer>>();
+            for (int i = 0; i < 4; i++) {
+                tasks.add(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws IOException {
+                            return Tasks.runAll(threadNames(3), true).size();
+                        }
+                    });
+            }
+            List<Integer> res = Tasks.runAll(tasks, true);
+
+            assertEquals(4, res.size());
+            for (int n : res) assertEquals(3, n);
+            Tasks.EXECUTOR.shutdownNow();
+        }
+        finally {
+            Tasks.EXECUTOR = old;
+            Tasks.THREADS = oldThreads;
+        }
+    }
+
+    /**
+     * @return n tasks returning the name of their thread.
+     */
+    static List<Callable<String>> threadNames(int n) {
+        List<Callable<String>> tasks = new LinkedList<Callable<String>>();
+        for (int i = 0; i < n; i++) {
+            tasks.add(new Callable<String>() {
+                    @Override
+                    public String call() throws InterruptedException {
+                        Thread.sleep(10);
+                        return Thread.currentThread().getName();
+                    }
+                });
+        }
+        return tasks;
+    }
+}
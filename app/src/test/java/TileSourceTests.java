@@ -0,0 +1,93 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+import map.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.IOException;
+
+public class TileSourceTests {
+
+    @Test
+    public void standInServer_blank() throws IOException {
+        StandInTileServer server = new StandInTileServer(10);
+        TileSource oldSource = MapRequest.SOURCE;
+        ResponseCache oldCache = MapRequest.CACHE;
+
+        try {
+            MapRequest.SOURCE = server.getSource();
+            MapRequest.CACHE = null;
+
+            MapImageView v = new MapImageView(17.6, 59.8, 300, 200, 10, true);
+            MapRequest req = new MapRequest(v, "test_TileSourceTests", Language.EN);
+            BasicImage img = req.fetchRaw("style");
+
+            assertEquals(300, img.getWidth());
+            assertEquals(200, img.getHeight());
+            assertEquals(1, server.getNoServed());
+        }
+        finally {
+            MapRequest.SOURCE = oldSource;
+            MapRequest.CACHE = oldCache;
+            server.stop();
+        }
+    }
+
+    @Test
+    public void sparseCodeFetch() throws IOException {
+        StandInTileServer server = new StandInTileServer(0);
+        TileSource oldSource = MapRequest.SOURCE;
+        ResponseCache oldCache = MapRequest.CACHE;
+        Path dir = Files.createTempDirectory("test_TileSourceTests");
+        TiledImage[] imgs = null;
+
+        try {
+            MapRequest.SOURCE = server.getSource();
+            MapRequest.CACHE = null;
+
+            MapImageView v = new MapImageView(17.6, 59.8, 1200, 700, 10, false);
+            MapRequest req = new MapRequest(v, dir, Language.EN);
+            imgs = req.fetch3();
+
+            // blank box-image: no labels, so no code-tiles fetched
+            assertEquals(0, req.getLayouts().size());
+            assertEquals(2 * 3 * 2, server.getNoServed());
+            assertEquals(1200, imgs[1].getWidth());
+            assertEquals(700, imgs[1].getHeight());
+            assertEquals(0, imgs[1].getColor(new int[]{600, 600}).getAlpha());
+
+            TiledImage.load(imgs[1].getDir());
+        }
+        finally {
+            MapRequest.SOURCE = oldSource;
+            MapRequest.CACHE = oldCache;
+            server.stop();
+            if (imgs != null) for (TiledImage img : imgs) img.delete();
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+
+    @Test
+    public void replay() throws IOException {
+        Path dir = Files.createTempDirectory("test_TileSourceTests");
+        ResponseCache cache = new ResponseCache(dir, 1 << 20);
+        MapImageView v = new MapImageView(17.6, 59.8, 30, 20, 10, false);
+        MapRequest req = new MapRequest(v, dir, Language.EN);
+
+        try {
+            TileSource blank = new StandInTileServer.BlankTileSource();
+            cache.put(ResponseCache.key(req, "style", MapboxTileSource.ID), blank.fetch(req, "style"));
+
+            TileSource replay = new ReplayTileSource(dir);
+            assertTrue(replay.fetch(req, "style").length > 0);
+
+            try {
+                replay.fetch(req, "other");
+                fail();
+            }
+            catch (IOException e) {}
+        }
+        finally {
+            TiledImage.deleteDir(dir.toFile());
+        }
+    }
+}
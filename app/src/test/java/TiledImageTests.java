@@ -1,6 +1,7 @@
 import org.junit.Test;
 import static org.junit.Assert.*;
 import map.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.io.IOException;
@@ -62,6 +63,132 @@ public class TiledImageTests {
     //     img.getSubImage(new int[]{img.getWidth()/2, img.getHeight()/2, 100000, 100000}).save("test_TiledImageTests_halfSubImage.png");
     // }
 
+    @Test
+    public void memoryBudget() throws IOException {
+        Path dir = Files.createTempDirectory("test_TiledImageTests");
+        BasicImage tile = new BasicImage(10, 10);
+        tile.color(Color.BLUE);
+
+        // room for two of four tiles
+        TiledImage.Builder b = new TiledImage.Builder(2, 2, dir, 2 * tile.getNoBytes());
+        for (int i = 0; i < 4; i++) b.add(tile);
+        TiledImage img = b.build();
+
+        assertEquals(2, dir.toFile().listFiles().length);
+        assertEquals(Color.BLUE, img.getColor(new int[]{5, 5}));
+        assertEquals(Color.BLUE, img.getColor(new int[]{15, 15}));
+        assertEquals(20, img.getSubImage(new int[]{0, 0, 19, 19}).getWidth());
+        img.delete();
+    }
+
+    @Test
+    public void delete_memoryTiles() throws IOException {
+        Path dir = Files.createTempDirectory("test_TiledImageTests");
+        BasicImage tile = new BasicImage(10, 10);
+        tile.color(Color.BLUE);
+        TiledImage.Builder b = new TiledImage.Builder(1, 2, dir, 2 * tile.getNoBytes());
+        b.add(tile);
+        b.add(tile);
+        TiledImage img = b.build();
+        img.delete();
+
+        assertFalse(dir.toFile().exists());
+        try {
+            img.getColor(new int[]{15, 5});
+            fail();
+        }
+        catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void tileCache() throws IOException {
+        Path dir = Files.createTempDirectory("test_TiledImageTests");
+        BasicImage tile = new BasicImage(10, 10);
+        TiledImage.Builder b = new TiledImage.Builder(1, 3, dir);
+        for (int i = 0; i < 3; i++) b.add(tile);
+        TiledImage img = b.build();
+
+        TileCache cache = new TileCache(2 * tile.getNoBytes());
+        cache.put(0, 0, tile);
+        cache.put(0, 1, tile);
+        assertNotNull(cache.get(0, 0));
+        cache.put(0, 2, tile);
+
+        assertNull(cache.get(0, 1));
+        assertNotNull(cache.get(0, 0));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+
+        // constructor loads top-left, last tile read needn't lookup
+        img.getColor(new int[]{5, 5});
+        img.getColor(new int[]{25, 5});
+        img.getColor(new int[]{5, 5});
+        assertEquals(1, img.getCache().getHits());
+        assertEquals(2, img.getCache().getMisses());
+        img.delete();
+    }
+
+    @Test
+    public void getTile_concurrent() throws Exception {
+        Path dir = Files.createTempDirectory("test_TiledImageTests");
+        TiledImage.Builder b = new TiledImage.Builder(1, 2, dir);
+        BasicImage tile = new BasicImage(10, 10);
+        tile.color(Color.BLUE);
+        b.add(tile);
+        b.add(tile);
+        final TiledImage img = b.build();
+
+        Thread[] ts = new Thread[8];
+        final BasicImage[] loaded = new BasicImage[ts.length];
+        for (int i = 0; i < ts.length; i++) {
+            final int i_ = i;
+            ts[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            loaded[i_] = img.getTile(0, 1);
+                        }
+                        catch (IOException e) {}
+                    }
+                });
+            ts[i].start();
+        }
+        for (Thread t : ts) t.join();
+
+        // loaded once, shared by all threads
+        for (BasicImage t : loaded) assertSame(loaded[0], t);
+        assertEquals(Color.BLUE, loaded[0].getColor(5, 5));
+        img.delete();
+    }
+
+    @Test
+    public void getSubImage_acrossTiles() throws IOException {
+        Path dir = Files.createTempDirectory("test_TiledImageTests");
+        TiledImage.Builder b = new TiledImage.Builder(2, 2, dir);
+        Color[] cs = new Color[]{Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW};
+        for (int i = 0; i < 4; i++) {
+            BasicImage tile = new BasicImage(i % 2 == 0 ? 10 : 7, i < 2 ? 10 : 5);
+            tile.color(cs[i]);
+            b.add(tile);
+        }
+        TiledImage img = b.build();
+
+        BasicImage sub = img.getSubImage(new int[]{8, 7, 100, 100});
+        assertEquals(9, sub.getWidth());
+        assertEquals(8, sub.getHeight());
+        assertEquals(Color.RED, sub.getColor(0, 0));
+        assertEquals(Color.GREEN, sub.getColor(2, 2));
+        assertEquals(Color.BLUE, sub.getColor(1, 3));
+        assertEquals(Color.YELLOW, sub.getColor(8, 7));
+
+        BasicImage one = img.getOneImage();
+        for (int y = 0; y < 15; y++)
+            for (int x = 0; x < 17; x++)
+                assertEquals(img.getARGB(x, y), one.getARGB(x, y));
+        img.delete();
+    }
+
     public static TiledImage loader(Path dir) {
         try {
             return TiledImage.load(dir);